@@ -116,6 +116,39 @@ public class DiGraph {
         return adj[v].size();
     }
 
+    /**
+     * Returns the number of vertices in the graph
+     *
+     * @return the number of vertices in the graph
+     */
+    public int V() {
+        return V;
+    }
+
+    /**
+     * Returns the number of edges in the graph
+     *
+     * @return the number of edges in the graph
+     */
+    public int E() {
+        return E;
+    }
+
+    /**
+     * Returns the reverse of the graph
+     *
+     * @return a graph with every edge s->d of this graph replaced by d->s
+     */
+    public DiGraph reverse() {
+        DiGraph reverse = new DiGraph(V);
+        for (int v = 0; v < V; v++) {
+            for (int w : adj[v]) {
+                reverse.addEdge(w, v);
+            }
+        }
+        return reverse;
+    }
+
     /**
      * Returns a string representation of this graph.
      *
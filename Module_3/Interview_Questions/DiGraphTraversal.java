@@ -0,0 +1,338 @@
+/* *****************************************************************************
+ *  Name:              Ada Lovelace
+ *  Coursera User ID:  123456
+ *  Last modified:     October 16, 1842
+ **************************************************************************** */
+
+import java.util.Arrays;
+
+/**
+ * Traversals over a compressed sparse row copy of a DiGraph, whose
+ * neighbors of v are targets[offsets[v]] .. targets[offsets[v + 1] - 1],
+ * without recursion and without
+ * allocating per visit: every stack and queue is an int[] sized once to the
+ * graph, and visited marks are epoch stamps, so starting a new traversal is
+ * one increment instead of clearing V entries. Suits graphs with tens of
+ * millions of edges and chains far deeper than the thread stack.
+ *
+ * The results of a traversal (marked, distTo, vertexAt) stay valid until the
+ * next one starts. An instance is not thread-safe; use one per thread.
+ */
+public class DiGraphTraversal {
+    private final int V;
+    private final int[] offsets;
+    private final int[] targets;
+    // v is marked by the current traversal if mark[v] == epoch
+    private final int[] mark;
+    private int epoch;
+    private final int[] distTo;
+    // vertices in visiting order: BFS queue or DFS preorder
+    private final int[] order;
+    private int reached;
+    // DFS stack of vertices and the next edge to follow from each
+    private final int[] stack;
+    private final int[] cursor;
+    // Tarjan low links, allocated on first use
+    private int[] low;
+
+    /**
+     * @param G the digraph, copied into CSR form with neighbors in the same
+     * order as adj(v); later edges are not seen
+     */
+    public DiGraphTraversal(DiGraph G) {
+        this(checkNotNull(G).V(), offsetsOf(G), targetsOf(G));
+    }
+
+    // wraps the arrays without copying
+    private DiGraphTraversal(int V, int[] offsets, int[] targets) {
+        this.V = V;
+        this.offsets = offsets;
+        this.targets = targets;
+        mark = new int[V];
+        distTo = new int[V];
+        order = new int[V];
+        stack = new int[V];
+        cursor = new int[V];
+    }
+
+    private static DiGraph checkNotNull(DiGraph G) {
+        if (G == null) throw new IllegalArgumentException("Argument is null");
+        return G;
+    }
+
+    private static int[] offsetsOf(DiGraph G) {
+        int[] offsets = new int[G.V() + 1];
+        for (int v = 0; v < G.V(); v++) {
+            offsets[v + 1] = offsets[v] + G.degree(v);
+        }
+        return offsets;
+    }
+
+    private static int[] targetsOf(DiGraph G) {
+        int[] targets = new int[G.E()];
+        int e = 0;
+        for (int v = 0; v < G.V(); v++) {
+            for (int w : G.adj(v)) {
+                targets[e++] = w;
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * @return a traversal over the digraph with every edge reversed
+     */
+    public DiGraphTraversal reverse() {
+        int[] reverseOffsets = new int[V + 1];
+        for (int w: targets) reverseOffsets[w + 1]++;
+        for (int v = 0; v < V; v++) reverseOffsets[v + 1] += reverseOffsets[v];
+        int[] reverseTargets = new int[targets.length];
+        int[] next = Arrays.copyOf(reverseOffsets, V);
+        for (int v = 0; v < V; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                reverseTargets[next[targets[e]]++] = v;
+            }
+        }
+        return new DiGraphTraversal(V, reverseOffsets, reverseTargets);
+    }
+
+    public int V() {
+        return V;
+    }
+
+    public int E() {
+        return targets.length;
+    }
+
+    /**
+     * Breadth-first search from one source
+     * @return number of vertices reached, the source included
+     */
+    public int bfs(int source) {
+        validateVertex(source);
+        newEpoch();
+        visit(source, 0);
+        return runBfs(-1);
+    }
+
+    /**
+     * Breadth-first search from several sources at once; distTo(v) is the
+     * distance from the nearest of them
+     * @return number of vertices reached
+     */
+    public int bfs(int[] sources) {
+        if (sources == null) throw new IllegalArgumentException("Argument is null");
+        for (int source: sources) validateVertex(source);
+        newEpoch();
+        for (int source: sources) {
+            if (mark[source] != epoch) visit(source, 0);
+        }
+        return runBfs(-1);
+    }
+
+    /**
+     * @return length of the shortest directed path from source to target, -1 if
+     * there is none; the search stops as soon as target is reached
+     */
+    public int distance(int source, int target) {
+        validateVertex(source);
+        validateVertex(target);
+        newEpoch();
+        visit(source, 0);
+        runBfs(target);
+        return distTo(target);
+    }
+
+    // expands the queue order[0 .. reached), stopping once target is marked
+    private int runBfs(int target) {
+        for (int head = 0; head < reached; head++) {
+            if (target >= 0 && mark[target] == epoch) break;
+            int v = order[head];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (mark[w] != epoch) visit(w, distTo[v] + 1);
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Depth-first search from one source, following edges in adjacency order
+     * @return number of vertices reached; vertexAt(i) lists them in preorder
+     */
+    public int dfs(int source) {
+        validateVertex(source);
+        newEpoch();
+        runDfs(source, null, 0);
+        return reached;
+    }
+
+    /**
+     * Iterative DFS from source over unmarked vertices
+     * @param postorder receives the vertices in postorder from index from, or null
+     * @return index after the last vertex written to postorder
+     */
+    private int runDfs(int source, int[] postorder, int from) {
+        int top = 0;
+        visit(source, 0);
+        stack[top] = source;
+        cursor[top++] = offsets[source];
+        while (top > 0) {
+            int v = stack[top - 1];
+            if (cursor[top - 1] < offsets[v + 1]) {
+                int w = targets[cursor[top - 1]++];
+                if (mark[w] == epoch) continue;
+                visit(w, distTo[v] + 1);
+                stack[top] = w;
+                cursor[top++] = offsets[w];
+            }
+            else {
+                top--;
+                if (postorder != null) postorder[from++] = v;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @return whether the last traversal reached v
+     */
+    public boolean marked(int v) {
+        validateVertex(v);
+        return mark[v] == epoch;
+    }
+
+    /**
+     * @return number of edges from the sources of the last traversal to v along
+     * the path it found, -1 if it did not reach v; shortest for bfs
+     */
+    public int distTo(int v) {
+        validateVertex(v);
+        return mark[v] == epoch ? distTo[v] : -1;
+    }
+
+    /**
+     * @return the i-th vertex reached by the last bfs or dfs
+     */
+    public int vertexAt(int i) {
+        if (i < 0 || i >= reached)
+            throw new IllegalArgumentException("index " + i + " is not between 0 and " + (reached - 1));
+        return order[i];
+    }
+
+    /**
+     * Reverse postorder of a DFS over the whole digraph
+     * @return vertices such that every edge points from an earlier to a later
+     * one, or null if the digraph has a cycle
+     */
+    public int[] topologicalOrder() {
+        int[] postorder = new int[V];
+        newEpoch();
+        int count = 0;
+        for (int v = 0; v < V; v++) {
+            if (mark[v] != epoch) count = runDfs(v, postorder, count);
+        }
+        // rank in reverse postorder; a DAG has no edge to an earlier rank
+        int[] rank = distTo;
+        for (int i = 0; i < V; i++) rank[postorder[i]] = V - 1 - i;
+        for (int v = 0; v < V; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                if (rank[targets[e]] <= rank[v]) {
+                    newEpoch();
+                    return null;
+                }
+            }
+        }
+        for (int i = 0, j = V - 1; i < j; i++, j--) {
+            int swap = postorder[i];
+            postorder[i] = postorder[j];
+            postorder[j] = swap;
+        }
+        newEpoch();
+        return postorder;
+    }
+
+    /**
+     * Strongly connected components by Tarjan's algorithm, with an explicit
+     * call stack in place of recursion
+     * @param component receives the component id of every vertex; ids are in
+     * reverse topological order of the condensation, sinks first
+     * @return number of components
+     */
+    public int strongComponents(int[] component) {
+        if (component == null || component.length < V)
+            throw new IllegalArgumentException("component array must hold " + V + " vertices");
+        Arrays.fill(component, 0, V, -1);
+        // distTo holds the preorder index, order the vertices not yet assigned
+        int[] index = distTo;
+        if (low == null) low = new int[V];
+        int[] pending = order;
+        int pendingSize = 0;
+        int preorder = 0;
+        int count = 0;
+        newEpoch();
+        for (int root = 0; root < V; root++) {
+            if (mark[root] == epoch) continue;
+            int top = 0;
+            mark[root] = epoch;
+            index[root] = low[root] = preorder++;
+            pending[pendingSize++] = root;
+            stack[top] = root;
+            cursor[top++] = offsets[root];
+            while (top > 0) {
+                int v = stack[top - 1];
+                if (cursor[top - 1] < offsets[v + 1]) {
+                    int w = targets[cursor[top - 1]++];
+                    if (mark[w] != epoch) {
+                        mark[w] = epoch;
+                        index[w] = low[w] = preorder++;
+                        pending[pendingSize++] = w;
+                        stack[top] = w;
+                        cursor[top++] = offsets[w];
+                    }
+                    else if (component[w] == -1) {
+                        // w is still pending, so it is on the current path's component stack
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                top--;
+                if (top > 0) {
+                    int parent = stack[top - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = pending[--pendingSize];
+                        component[w] = count;
+                    } while (w != v);
+                    count++;
+                }
+            }
+        }
+        reached = 0;
+        newEpoch();
+        return count;
+    }
+
+    // starts a new traversal; clears the marks only when the epoch wraps around
+    private void newEpoch() {
+        if (++epoch == 0) {
+            Arrays.fill(mark, 0);
+            epoch = 1;
+        }
+        reached = 0;
+    }
+
+    private void visit(int v, int distance) {
+        mark[v] = epoch;
+        distTo[v] = distance;
+        order[reached++] = v;
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= V)
+            throw new IllegalArgumentException("Vertex " + v + " is not between 0 and " + (V - 1));
+    }
+}
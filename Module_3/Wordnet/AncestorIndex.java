@@ -0,0 +1,272 @@
+import edu.princeton.cs.algs4.Digraph;
+
+import java.util.Arrays;
+
+/**
+ * Ancestor closure of every vertex of a DAG. For each vertex the ids of all its
+ * ancestors (itself included) are kept sorted, next to their BFS distance from
+ * the vertex, in flat int arrays. A shortest ancestral path query becomes a
+ * merge-join of two ancestor lists: no traversal, no allocation.
+ */
+public class AncestorIndex {
+    // ancestors of v are ancestors[offsets[v]] .. ancestors[offsets[v + 1] - 1]
+    private final int[] offsets;
+    private final int[] ancestors;
+    private final int[] distances;
+    private final long buildNanos;
+
+    private AncestorIndex(int[] offsets, int[] ancestors, int[] distances, long buildNanos) {
+        this.offsets = offsets;
+        this.ancestors = ancestors;
+        this.distances = distances;
+        this.buildNanos = buildNanos;
+    }
+
+    /**
+     * Builds the index by dynamic programming over the topological order: the
+     * ancestor list of v is v itself at distance 0 merged with the lists of its
+     * direct hypernyms shifted by one, keeping the smaller distance for ids that
+     * appear in several lists
+     * @param G acyclic digraph
+     * @param order vertices of G such that every edge v->w has v before w
+     * @param maxEntries upper bound on the total number of (ancestor, distance) entries
+     * @return the index, or null if it would hold more than maxEntries entries
+     */
+    public static AncestorIndex build(Digraph G, Iterable<Integer> order, long maxEntries) {
+        if (G == null || order == null) throw new IllegalArgumentException("Argument is null");
+        int[] topological = new int[G.V()];
+        int n = 0;
+        for (int v: order) {
+            if (n == topological.length) throw new IllegalArgumentException("order repeats vertices");
+            topological[n++] = v;
+        }
+        return build(CsrDigraph.of(G), topological, maxEntries);
+    }
+
+    /**
+     * @see #build(Digraph, Iterable, long)
+     * @param order vertices of G such that every edge v->w has v before w
+     */
+    public static AncestorIndex build(CsrDigraph G, int[] order, long maxEntries) {
+        if (G == null || order == null) throw new IllegalArgumentException("Argument is null");
+        if (order.length != G.V()) throw new IllegalArgumentException("order does not cover every vertex");
+        long start = System.nanoTime();
+        int[] hypernymOffsets = G.offsets();
+        int[] hypernymTargets = G.targets();
+
+        int[][] ancestorLists = new int[G.V()][];
+        int[][] distanceLists = new int[G.V()][];
+        int[] mergedIds = new int[16];
+        int[] mergedDists = new int[16];
+        int[] nextIds = new int[16];
+        int[] nextDists = new int[16];
+        long entries = 0;
+        // walking the order backwards visits hypernyms before their hyponyms
+        for (int position = order.length - 1; position >= 0; position--) {
+            int v = order[position];
+            int size = 1;
+            mergedIds[0] = v;
+            mergedDists[0] = 0;
+            for (int e = hypernymOffsets[v]; e < hypernymOffsets[v + 1]; e++) {
+                int hypernym = hypernymTargets[e];
+                int[] ids = ancestorLists[hypernym];
+                int[] dists = distanceLists[hypernym];
+                int capacity = size + ids.length;
+                if (nextIds.length < capacity) {
+                    nextIds = new int[Math.max(capacity, nextIds.length * 2)];
+                    nextDists = new int[nextIds.length];
+                }
+                int i = 0;
+                int j = 0;
+                int k = 0;
+                while (i < size || j < ids.length) {
+                    if (j == ids.length || (i < size && mergedIds[i] < ids[j])) {
+                        nextIds[k] = mergedIds[i];
+                        nextDists[k++] = mergedDists[i++];
+                    }
+                    else if (i == size || ids[j] < mergedIds[i]) {
+                        nextIds[k] = ids[j];
+                        nextDists[k++] = dists[j++] + 1;
+                    }
+                    else {
+                        nextIds[k] = ids[j];
+                        nextDists[k++] = Math.min(mergedDists[i++], dists[j++] + 1);
+                    }
+                }
+                int[] swap = mergedIds;
+                mergedIds = nextIds;
+                nextIds = swap;
+                swap = mergedDists;
+                mergedDists = nextDists;
+                nextDists = swap;
+                size = k;
+            }
+            entries += size;
+            if (entries > maxEntries) return null;
+            ancestorLists[v] = Arrays.copyOf(mergedIds, size);
+            distanceLists[v] = Arrays.copyOf(mergedDists, size);
+        }
+
+        int[] offsets = new int[G.V() + 1];
+        int[] ancestors = new int[(int) entries];
+        int[] distances = new int[(int) entries];
+        for (int v = 0; v < G.V(); v++) {
+            int length = ancestorLists[v].length;
+            offsets[v + 1] = offsets[v] + length;
+            System.arraycopy(ancestorLists[v], 0, ancestors, offsets[v], length);
+            System.arraycopy(distanceLists[v], 0, distances, offsets[v], length);
+            ancestorLists[v] = null;
+            distanceLists[v] = null;
+        }
+        return new AncestorIndex(offsets, ancestors, distances, System.nanoTime() - start);
+    }
+
+    /**
+     * Recreates an index from the arrays returned by tables, e.g. read back
+     * from a WordNet snapshot
+     * @param vertices number of vertices of the digraph the index was built on
+     * @throws IllegalArgumentException unless every vertex has a list of
+     * increasing ancestor ids below vertices with non-negative distances
+     */
+    static AncestorIndex fromTables(int vertices, int[] offsets, int[] ancestors, int[] distances) {
+        if (ancestors.length != distances.length || offsets.length != vertices + 1 || offsets[0] != 0
+                || offsets[vertices] != ancestors.length) {
+            throw new IllegalArgumentException("inconsistent ancestor index tables");
+        }
+        for (int v = 0; v < vertices; v++) {
+            if (offsets[v] > offsets[v + 1]) throw new IllegalArgumentException("inconsistent ancestor index tables");
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (ancestors[i] < 0 || ancestors[i] >= vertices || distances[i] < 0
+                        || (i > offsets[v] && ancestors[i] <= ancestors[i - 1])) {
+                    throw new IllegalArgumentException("inconsistent ancestor index tables");
+                }
+            }
+        }
+        return new AncestorIndex(offsets, ancestors, distances, 0);
+    }
+
+    // offsets, ancestors and distances, for persisting the index
+    int[][] tables() {
+        return new int[][] { offsets, ancestors, distances };
+    }
+
+    /**
+     * @return length of the shortest ancestral path between any vertex in v and
+     * any vertex in w, -1 if there is none
+     */
+    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        return (int) find(v, w);
+    }
+
+    /**
+     * @return common ancestor in the shortest ancestral path between any vertex in
+     * v and any vertex in w, -1 if there is none
+     */
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        return (int) (find(v, w) >> 32);
+    }
+
+    public int length(int v, int w) {
+        return (int) find(v, w);
+    }
+
+    public int ancestor(int v, int w) {
+        return (int) (find(v, w) >> 32);
+    }
+
+    /**
+     * @return number of (ancestor, distance) entries over all vertices
+     */
+    public int entries() {
+        return ancestors.length;
+    }
+
+    /**
+     * @return approximate heap bytes used by the index arrays
+     */
+    public long memoryBytes() {
+        return 3L * 16 + 4L * (offsets.length + ancestors.length + distances.length);
+    }
+
+    /**
+     * @return time spent building the index, in milliseconds
+     */
+    public double buildMillis() {
+        return buildNanos / 1e6;
+    }
+
+    private long find(Iterable<Integer> v, Iterable<Integer> w) {
+        long best = pack(-1, -1);
+        for (int vVertex: v) {
+            for (int wVertex: w) {
+                long candidate = find(vVertex, wVertex);
+                int length = (int) candidate;
+                if (length != -1 && (best == pack(-1, -1) || length < (int) best)) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Slice-based query used by WordNet on its flat noun tables
+     * @return packed (ancestor, length), both -1 if there is no common ancestor
+     */
+    long find(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        long best = pack(-1, -1);
+        for (int i = vFrom; i < vTo; i++) {
+            for (int j = wFrom; j < wTo; j++) {
+                long candidate = find(v[i], w[j]);
+                int length = (int) candidate;
+                if (length != -1 && (best == pack(-1, -1) || length < (int) best)) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Merge-joins the sorted ancestor lists of v and w
+     * @return packed (ancestor, length), both -1 if v and w share no ancestor
+     */
+    private long find(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        int i = offsets[v];
+        int iEnd = offsets[v + 1];
+        int j = offsets[w];
+        int jEnd = offsets[w + 1];
+        int bestAncestor = -1;
+        int bestLength = Integer.MAX_VALUE;
+        while (i < iEnd && j < jEnd) {
+            int a = ancestors[i];
+            int b = ancestors[j];
+            if (a < b) {
+                i++;
+            }
+            else if (b < a) {
+                j++;
+            }
+            else {
+                int length = distances[i++] + distances[j++];
+                if (length < bestLength) {
+                    bestLength = length;
+                    bestAncestor = a;
+                }
+            }
+        }
+        if (bestAncestor == -1) return pack(-1, -1);
+        return pack(bestAncestor, bestLength);
+    }
+
+    private static long pack(int ancestor, int length) {
+        return ((long) ancestor << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    private void validateVertex(int vertex) {
+        if (vertex < 0 || vertex >= offsets.length - 1)
+            throw new IllegalArgumentException("vertex " + vertex + " is not between 0 and " + (offsets.length - 2));
+    }
+}
@@ -0,0 +1,399 @@
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.In;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable digraph in compressed sparse row form: the targets of the edges
+ * leaving v are targets[offsets[v]] .. targets[offsets[v + 1] - 1]. Neighbors are
+ * read through edge index ranges, so a traversal allocates nothing and walks
+ * two contiguous int arrays instead of a linked list of boxed Integers.
+ *
+ *     for (int e = G.firstEdge(v); e < G.lastEdge(v); e++) {
+ *         int w = G.target(e);
+ *     }
+ */
+public final class CsrDigraph {
+    // smaller topological levels are released on the calling thread
+    private static final int PARALLEL_LEVEL_THRESHOLD = 1024;
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    /**
+     * Wraps the arrays without copying; callers must not modify them afterwards
+     */
+    CsrDigraph(int[] offsets, int[] targets) {
+        if (offsets == null || targets == null) throw new IllegalArgumentException("Argument is null");
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != targets.length) {
+            throw new IllegalArgumentException("offsets do not describe the targets array");
+        }
+        int vertices = offsets.length - 1;
+        for (int v = 0; v < vertices; v++) {
+            if (offsets[v] > offsets[v + 1]) throw new IllegalArgumentException("offsets must not decrease");
+        }
+        for (int target: targets) {
+            if (target < 0 || target >= vertices)
+                throw new IllegalArgumentException("vertex " + target + " is not between 0 and " + (vertices - 1));
+        }
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Builds a CSR copy of an algs4 digraph
+     * @param G the digraph
+     */
+    public static CsrDigraph of(Digraph G) {
+        if (G == null) throw new IllegalArgumentException("Digraph cannot be null");
+        int[] offsets = new int[G.V() + 1];
+        int[] targets = new int[G.E()];
+        int e = 0;
+        for (int v = 0; v < G.V(); v++) {
+            // same neighbor order as G.adj(v)
+            for (int w: G.adj(v)) {
+                targets[e++] = w;
+            }
+            offsets[v + 1] = e;
+        }
+        return new CsrDigraph(offsets, targets);
+    }
+
+    /**
+     * Builds a CSR digraph from edge lists
+     * @param vertices number of vertices
+     * @param from source of each edge
+     * @param to target of each edge, same length as from
+     */
+    public static CsrDigraph fromEdges(int vertices, int[] from, int[] to) {
+        if (vertices < 0) throw new IllegalArgumentException("Number of vertices must be non-negative");
+        if (from == null || to == null || from.length != to.length) {
+            throw new IllegalArgumentException("edge arrays must be non-null and of equal length");
+        }
+        int[] offsets = new int[vertices + 1];
+        for (int v: from) {
+            if (v < 0 || v >= vertices)
+                throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (vertices - 1));
+            offsets[v + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] targets = new int[to.length];
+        int[] next = Arrays.copyOf(offsets, vertices);
+        for (int i = 0; i < from.length; i++) {
+            targets[next[from[i]]++] = to[i];
+        }
+        return new CsrDigraph(offsets, targets);
+    }
+
+    /**
+     * Reads a digraph in the algs4 format: V, E, then E pairs of vertices
+     * @param in the input stream
+     * @throws IllegalArgumentException if invalid input
+     */
+    public static CsrDigraph read(In in) {
+        if (in == null) throw new IllegalArgumentException("Argument is null");
+        try {
+            int vertices = in.readInt();
+            if (vertices < 0) throw new IllegalArgumentException("Number of vertices must be non-negative");
+            int edges = in.readInt();
+            if (edges < 0) throw new IllegalArgumentException("Number of edges must be non-negative");
+            int[] from = new int[edges];
+            int[] to = new int[edges];
+            for (int i = 0; i < edges; i++) {
+                from[i] = in.readInt();
+                to[i] = in.readInt();
+            }
+            return fromEdges(vertices, from, to);
+        }
+        catch (NoSuchElementException e) {
+            throw new IllegalArgumentException("Invalid input format in CsrDigraph", e);
+        }
+    }
+
+    public int V() {
+        return offsets.length - 1;
+    }
+
+    public int E() {
+        return targets.length;
+    }
+
+    public int outdegree(int v) {
+        validateVertex(v);
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * @return index of the first edge leaving v
+     */
+    public int firstEdge(int v) {
+        validateVertex(v);
+        return offsets[v];
+    }
+
+    /**
+     * @return one past the index of the last edge leaving v
+     */
+    public int lastEdge(int v) {
+        validateVertex(v);
+        return offsets[v + 1];
+    }
+
+    /**
+     * @param edge edge index in [firstEdge(v), lastEdge(v)) for some v
+     * @return the vertex the edge points to
+     */
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * Boxed view of the neighbors of v, for code written against Digraph.adj;
+     * hot loops should use the edge index range instead
+     */
+    public Iterable<Integer> adj(int v) {
+        validateVertex(v);
+        int from = offsets[v];
+        int to = offsets[v + 1];
+        return () -> new java.util.Iterator<Integer>() {
+            private int edge = from;
+
+            public boolean hasNext() {
+                return edge < to;
+            }
+
+            public Integer next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return targets[edge++];
+            }
+        };
+    }
+
+    /**
+     * @return digraph with every edge reversed
+     */
+    public CsrDigraph reverse() {
+        int vertices = V();
+        int[] reversedOffsets = new int[vertices + 1];
+        for (int target: targets) {
+            reversedOffsets[target + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            reversedOffsets[v + 1] += reversedOffsets[v];
+        }
+        int[] reversedTargets = new int[targets.length];
+        int[] next = Arrays.copyOf(reversedOffsets, vertices);
+        for (int v = 0; v < vertices; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                reversedTargets[next[targets[e]]++] = v;
+            }
+        }
+        return new CsrDigraph(reversedOffsets, reversedTargets);
+    }
+
+    /**
+     * Kahn's algorithm over in-degrees
+     * @return vertices such that every edge v->w has v before w, or null if the
+     * digraph has a cycle
+     */
+    public int[] topologicalOrder() {
+        int vertices = V();
+        int[] indegree = new int[vertices];
+        for (int target: targets) {
+            indegree[target]++;
+        }
+        int[] order = new int[vertices];
+        int tail = 0;
+        for (int v = 0; v < vertices; v++) {
+            if (indegree[v] == 0) order[tail++] = v;
+        }
+        for (int head = 0; head < tail; head++) {
+            int v = order[head];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                if (--indegree[targets[e]] == 0) order[tail++] = targets[e];
+            }
+        }
+        return tail == vertices ? order : null;
+    }
+
+    /**
+     * Kahn's algorithm one level at a time: in-degrees are counted and each
+     * level's vertices are released on the common fork-join pool, with atomic
+     * in-degree decrements deciding which thread appends a vertex to the next level
+     * @param parallel whether to run in parallel; false is the same as topologicalOrder()
+     * @return vertices such that every edge v->w has v before w, or null if the
+     * digraph has a cycle
+     */
+    public int[] topologicalOrder(boolean parallel) {
+        if (!parallel) return topologicalOrder();
+        int vertices = V();
+        AtomicIntegerArray indegree = new AtomicIntegerArray(vertices);
+        IntStream.range(0, targets.length).parallel().forEach(e -> indegree.incrementAndGet(targets[e]));
+        int[] sources = IntStream.range(0, vertices).parallel().filter(v -> indegree.get(v) == 0).toArray();
+        int[] order = Arrays.copyOf(sources, vertices);
+        AtomicInteger tail = new AtomicInteger(sources.length);
+        int head = 0;
+        while (head < tail.get()) {
+            int from = head;
+            int to = tail.get();
+            IntStream level = IntStream.range(from, to);
+            if (to - from >= PARALLEL_LEVEL_THRESHOLD) level = level.parallel();
+            level.forEach(i -> {
+                int v = order[i];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    if (indegree.decrementAndGet(targets[e]) == 0) order[tail.getAndIncrement()] = targets[e];
+                }
+            });
+            head = to;
+        }
+        return tail.get() == vertices ? order : null;
+    }
+
+    /**
+     * @param parallel whether to count in parallel
+     * @return number of vertices without outgoing edges
+     */
+    public int sinks(boolean parallel) {
+        IntStream vertices = IntStream.range(0, V());
+        if (parallel) vertices = vertices.parallel();
+        return (int) vertices.filter(v -> offsets[v] == offsets[v + 1]).count();
+    }
+
+    /**
+     * @return algs4 copy of this digraph
+     */
+    public Digraph toDigraph() {
+        Digraph G = new Digraph(V());
+        for (int v = 0; v < V(); v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                G.addEdge(v, targets[e]);
+            }
+        }
+        return G;
+    }
+
+    /**
+     * @return copy of this digraph with the edge v->w added after the other edges of v
+     */
+    CsrDigraph withEdge(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        int[] grownOffsets = offsets.clone();
+        for (int x = v + 1; x < grownOffsets.length; x++) {
+            grownOffsets[x]++;
+        }
+        int[] grownTargets = new int[targets.length + 1];
+        int insert = offsets[v + 1];
+        System.arraycopy(targets, 0, grownTargets, 0, insert);
+        grownTargets[insert] = w;
+        System.arraycopy(targets, insert, grownTargets, insert + 1, targets.length - insert);
+        return new CsrDigraph(grownOffsets, grownTargets);
+    }
+
+    /**
+     * @return copy of this digraph with a new vertex V() whose edges point to the given vertices
+     */
+    CsrDigraph withVertex(int[] edgesTo) {
+        int[] grownOffsets = Arrays.copyOf(offsets, offsets.length + 1);
+        grownOffsets[offsets.length] = targets.length + edgesTo.length;
+        int[] grownTargets = Arrays.copyOf(targets, targets.length + edgesTo.length);
+        System.arraycopy(edgesTo, 0, grownTargets, targets.length, edgesTo.length);
+        return new CsrDigraph(grownOffsets, grownTargets);
+    }
+
+    // raw arrays for allocation-free traversals in this package; never modified
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= V())
+            throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (V() - 1));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(V()).append(" vertices, ").append(E()).append(" edges").append('\n');
+        for (int v = 0; v < V(); v++) {
+            s.append(v).append(": ");
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                s.append(targets[e]).append(" ");
+            }
+            s.append('\n');
+        }
+        return s.toString();
+    }
+
+    /**
+     * Times full BFS sweeps over a random digraph stored as an algs4 Digraph and as
+     * a CsrDigraph, to show the effect of contiguous, unboxed adjacency
+     * @param args optional V and E, default 1000000 and 5000000
+     */
+    public static void main(String[] args) {
+        int vertices = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int edges = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+        Random random = new Random(42);
+        Digraph G = new Digraph(vertices);
+        for (int i = 0; i < edges; i++) {
+            G.addEdge(random.nextInt(vertices), random.nextInt(vertices));
+        }
+        CsrDigraph csr = CsrDigraph.of(G);
+        int[] dist = new int[vertices];
+        int[] queue = new int[vertices];
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long reached = 0;
+            for (int source = 0; source < 5; source++) {
+                Arrays.fill(dist, -1);
+                int tail = 0;
+                queue[tail++] = source;
+                dist[source] = 0;
+                for (int head = 0; head < tail; head++) {
+                    int v = queue[head];
+                    for (int w: G.adj(v)) {
+                        if (dist[w] == -1) {
+                            dist[w] = dist[v] + 1;
+                            queue[tail++] = w;
+                        }
+                    }
+                }
+                reached += tail;
+            }
+            long digraphNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int source = 0; source < 5; source++) {
+                Arrays.fill(dist, -1);
+                int tail = 0;
+                queue[tail++] = source;
+                dist[source] = 0;
+                for (int head = 0; head < tail; head++) {
+                    int v = queue[head];
+                    for (int e = csr.offsets[v]; e < csr.offsets[v + 1]; e++) {
+                        int w = csr.targets[e];
+                        if (dist[w] == -1) {
+                            dist[w] = dist[v] + 1;
+                            queue[tail++] = w;
+                        }
+                    }
+                }
+                reached -= tail;
+            }
+            long csrNanos = System.nanoTime() - start;
+            System.out.printf("round %d: Digraph %.1f ms, CsrDigraph %.1f ms%s%n", round,
+                              digraphNanos / 1e6, csrNanos / 1e6, reached == 0 ? "" : " (mismatch)");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Interned noun table assigning every distinct noun a dense id 0 .. size() - 1
+ * in order of first appearance. Lookups go through an open-addressed,
+ * linear-probing table of ids next to the cached string hashes, so a lookup
+ * reads two int arrays and compares one string on a hit; no boxing, no nodes.
+ */
+public final class NounDictionary {
+    private static final int EMPTY = -1;
+
+    private String[] nouns;
+    private int size;
+    // slot -> noun id, EMPTY if unused; slotHashes[slot] is the hash of that noun
+    private int[] slots;
+    private int[] slotHashes;
+    private int mask;
+    // nouns in sorted order, built on first use
+    private volatile List<String> sorted;
+
+    /**
+     * Creates an empty dictionary sized for about expectedNouns nouns
+     */
+    public NounDictionary(int expectedNouns) {
+        if (expectedNouns < 0) throw new IllegalArgumentException("expected size must be non-negative");
+        nouns = new String[Math.max(16, expectedNouns)];
+        allocateSlots(nouns.length);
+    }
+
+    /**
+     * Creates a dictionary where nouns[i] has id i
+     * @throws IllegalArgumentException if a noun is null or repeated
+     */
+    public static NounDictionary of(String[] nouns) {
+        if (nouns == null) throw new IllegalArgumentException("Argument is null");
+        NounDictionary dictionary = new NounDictionary(nouns.length);
+        for (String noun: nouns) {
+            int size = dictionary.size;
+            if (dictionary.intern(noun) != size) throw new IllegalArgumentException("repeated noun " + noun);
+        }
+        return dictionary;
+    }
+
+    /**
+     * @return independent copy with the same ids, for copy-on-write updates
+     */
+    public NounDictionary copy() {
+        NounDictionary copy = new NounDictionary(0);
+        copy.nouns = nouns.clone();
+        copy.size = size;
+        copy.slots = slots.clone();
+        copy.slotHashes = slotHashes.clone();
+        copy.mask = mask;
+        copy.sorted = sorted;
+        return copy;
+    }
+
+    /**
+     * @return id of the noun, adding it with the next free id if it is new
+     */
+    public int intern(String noun) {
+        if (noun == null) throw new IllegalArgumentException("Argument is null");
+        int hash = hash(noun);
+        int slot = hash & mask;
+        while (slots[slot] != EMPTY) {
+            if (slotHashes[slot] == hash && nouns[slots[slot]].equals(noun)) return slots[slot];
+            slot = (slot + 1) & mask;
+        }
+        if (size == nouns.length) nouns = Arrays.copyOf(nouns, nouns.length * 2);
+        int id = size++;
+        nouns[id] = noun;
+        slots[slot] = id;
+        slotHashes[slot] = hash;
+        sorted = null;
+        // keep the load factor at or below one half
+        if (2 * size > slots.length) allocateSlots(2 * size);
+        return id;
+    }
+
+    /**
+     * @return id of the noun, or -1 if it is not in the dictionary
+     */
+    public int id(String noun) {
+        if (noun == null) throw new IllegalArgumentException("Argument is null");
+        int hash = hash(noun);
+        for (int slot = hash & mask; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (slotHashes[slot] == hash && nouns[slots[slot]].equals(noun)) return slots[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the noun with the given id
+     */
+    public String noun(int id) {
+        if (id < 0 || id >= size)
+            throw new IllegalArgumentException("noun id " + id + " is not between 0 and " + (size - 1));
+        return nouns[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return immutable view of all nouns in sorted order, computed once
+     */
+    public List<String> sortedNouns() {
+        List<String> view = sorted;
+        if (view == null) {
+            String[] copy = Arrays.copyOf(nouns, size);
+            Arrays.sort(copy);
+            view = Collections.unmodifiableList(Arrays.asList(copy));
+            sorted = view;
+        }
+        return view;
+    }
+
+    /**
+     * @return approximate heap bytes of the table and the nouns it holds
+     */
+    public long memoryBytes() {
+        long bytes = 4L * nouns.length + 8L * slots.length;
+        for (int i = 0; i < size; i++) {
+            // String object and its byte[]
+            bytes += 24 + 16 + nouns[i].length();
+        }
+        return bytes;
+    }
+
+    // nouns by id, trimmed to size; callers must not modify it
+    String[] nouns() {
+        return size == nouns.length ? nouns : Arrays.copyOf(nouns, size);
+    }
+
+    private void allocateSlots(int minimum) {
+        int capacity = Integer.highestOneBit(Math.max(16, 2 * minimum - 1)) << 1;
+        slots = new int[capacity];
+        slotHashes = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int hash = hash(nouns[id]);
+            int slot = hash & mask;
+            while (slots[slot] != EMPTY) slot = (slot + 1) & mask;
+            slots[slot] = id;
+            slotHashes[slot] = hash;
+        }
+    }
+
+    // String.hashCode is cached in the string; spread its high bits into the mask
+    private static int hash(String noun) {
+        int h = noun.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
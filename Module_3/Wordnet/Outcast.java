@@ -1,7 +1,7 @@
 public class Outcast {
-    private final WordNet wordnet;
+    private final OutcastEngine engine;
     public Outcast(WordNet wordnet) {
-        this.wordnet = wordnet;
+        this.engine = new OutcastEngine(wordnet);
     }
 
     /**
@@ -10,22 +10,9 @@ public class Outcast {
      * @return the outcast noun
      */
     public String outcast(String[] nouns) {
-       int maxDistance = Integer.MIN_VALUE; // minimum value of int
-       String outcast = "";
-       for (int i = 0; i < nouns.length; i++) {
-           String wordI = nouns[i];
-           int distanceI = 0;
-           for (int j = 0; j < i; j++) {
-               distanceI += wordnet.distance(nouns[j], nouns[i]);
-           }
-           for (int j = i+1; j < nouns.length; j++) {
-               distanceI += wordnet.distance(nouns[i], nouns[j]);
-           }
-           if (distanceI > maxDistance) {
-               maxDistance = distanceI;
-               outcast = wordI;
-           }
-       }
+       long start = QueryMetrics.start();
+       String outcast = engine.outcast(nouns);
+       QueryMetrics.record(QueryMetrics.Query.OUTCAST, start);
        return outcast;
     }
 
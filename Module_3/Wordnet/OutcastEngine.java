@@ -0,0 +1,268 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Scores every noun of a set by the sum of its distances to the others and
+ * returns the k highest, the outcasts. Each noun's ancestors are collected
+ * once, sorted by synset id, so a pair's distance is a merge of two short
+ * lists. Sets of up to MAX_CACHED_PAIRS pairs keep every distance computed, so
+ * a pair is merged once for both of its nouns; larger sets merge it again.
+ *
+ * Candidates whose score cannot reach the current k-th best are dropped
+ * early. Both nouns reach the single root of wordnet, so the distance of a
+ * pair is at most the sum of their deepest ancestor distances; a candidate's
+ * partial sum plus that bound over its remaining pairs is an upper bound on
+ * its score. Candidates are scored in decreasing order of their bound, and
+ * for large sets in parallel on the common fork-join pool.
+ */
+public class OutcastEngine {
+    // sets at least this large score their candidates in parallel
+    private static final int PARALLEL_THRESHOLD = 128;
+    // the pair cache holds one int per unordered pair, 64 MB at this size
+    private static final long MAX_CACHED_PAIRS = 1L << 24;
+    private static final int UNKNOWN = -2;
+
+    private final WordNet wordnet;
+    private final LongAdder pairsComputed = new LongAdder();
+
+    /**
+     * A noun and the sum of its distances to the other nouns of its set
+     */
+    public static final class Candidate {
+        private final String noun;
+        private final long score;
+
+        private Candidate(String noun, long score) {
+            this.noun = noun;
+            this.score = score;
+        }
+
+        public String noun() {
+            return noun;
+        }
+
+        public long score() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return score + " " + noun;
+        }
+    }
+
+    public OutcastEngine(WordNet wordnet) {
+        if (wordnet == null) throw new IllegalArgumentException("Argument is null");
+        this.wordnet = wordnet;
+    }
+
+    /**
+     * @return the noun with the highest score, the first one on ties; the same
+     * answer as Outcast.outcast
+     */
+    public String outcast(String[] nouns) {
+        List<Candidate> top = top(nouns, 1);
+        return top.isEmpty() ? "" : top.get(0).noun();
+    }
+
+    /**
+     * @param k number of outcasts wanted
+     * @return the k highest scoring nouns with their scores, highest first, ties
+     * in input order
+     */
+    public List<Candidate> top(String[] nouns, int k) {
+        if (nouns == null) throw new IllegalArgumentException("Argument is null");
+        if (k < 0) throw new IllegalArgumentException("k must be non-negative");
+        int n = nouns.length;
+        k = Math.min(k, n);
+        if (k == 0) return Collections.emptyList();
+        boolean parallel = n >= PARALLEL_THRESHOLD;
+
+        int[][] ids = new int[n][];
+        int[][] dists = new int[n][];
+        wordnet.closures(nouns, ids, dists, parallel);
+        int[] deepest = new int[n];
+        long deepestSum = 0;
+        for (int i = 0; i < n; i++) {
+            sortById(ids[i], dists[i]);
+            for (int d: dists[i]) deepest[i] = Math.max(deepest[i], d);
+            deepestSum += deepest[i];
+        }
+
+        // candidates by decreasing bound, packed as bound << 32 | index
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            long bound = (long) (n - 2) * deepest[i] + deepestSum;
+            order[i] = bound << 32 | i;
+        }
+        Arrays.sort(order);
+        AtomicIntegerArray[] pairs = pairCache(n);
+        TopK best = new TopK(k);
+
+        IntStream ranks = IntStream.range(0, n);
+        if (parallel) ranks = ranks.parallel();
+        ranks.forEach(rank -> {
+            long entry = order[n - 1 - rank];
+            int i = (int) entry;
+            if (best.isFull() && key(entry >> 32, i) <= best.worst()) return;
+            long score = score(i, ids, dists, deepest, pairs, best);
+            if (score != Long.MIN_VALUE) best.offer(key(score, i));
+        });
+
+        long[] keys = best.sorted();
+        List<Candidate> candidates = new ArrayList<>(keys.length);
+        for (long key: keys) {
+            int index = Integer.MAX_VALUE - (int) (key & 0xFFFFFFFFL);
+            candidates.add(new Candidate(nouns[index], key >> 32));
+        }
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * @return number of pairwise distances computed by this engine so far
+     */
+    public long pairsComputed() {
+        return pairsComputed.sum();
+    }
+
+    /**
+     * Sum of the distances of noun i, or Long.MIN_VALUE once it cannot make the
+     * top k. The distance of i and j, i > j, is kept in pairs[i] at j if pairs is
+     * not null; the worker whose compare-and-set publishes it is the one that
+     * counts it, so two candidates racing on a pair count it once
+     */
+    private long score(int i, int[][] ids, int[][] dists, int[] deepest, AtomicIntegerArray[] pairs, TopK best) {
+        int n = ids.length;
+        long partial = 0;
+        long remaining = 0;
+        for (int j = 0; j < n; j++) {
+            if (j != i) remaining += deepest[i] + deepest[j];
+        }
+        for (int j = 0; j < n; j++) {
+            if (j == i) continue;
+            AtomicIntegerArray row = pairs == null ? null : pairs[Math.max(i, j)];
+            int column = Math.min(i, j);
+            int d = row == null ? UNKNOWN : row.get(column);
+            if (d == UNKNOWN) {
+                d = distance(ids[i], dists[i], ids[j], dists[j]);
+                if (row == null || row.compareAndSet(column, UNKNOWN, d)) pairsComputed.increment();
+            }
+            partial += d;
+            remaining -= deepest[i] + deepest[j];
+            if (best.isFull() && key(partial + remaining, i) <= best.worst()) return Long.MIN_VALUE;
+        }
+        return partial;
+    }
+
+    // row i holds the distances of noun i to nouns 0 to i - 1; null for sets too large to cache
+    private static AtomicIntegerArray[] pairCache(int n) {
+        if ((long) n * (n - 1) / 2 > MAX_CACHED_PAIRS) return null;
+        AtomicIntegerArray[] pairs = new AtomicIntegerArray[n];
+        for (int i = 0; i < n; i++) {
+            pairs[i] = new AtomicIntegerArray(i);
+            for (int j = 0; j < i; j++) pairs[i].set(j, UNKNOWN);
+        }
+        return pairs;
+    }
+
+    // shortest ancestral path length from two ancestor lists sorted by id, -1 if disjoint
+    private static int distance(int[] aIds, int[] aDists, int[] bIds, int[] bDists) {
+        int best = Integer.MAX_VALUE;
+        int i = 0;
+        int j = 0;
+        while (i < aIds.length && j < bIds.length) {
+            if (aIds[i] < bIds[j]) i++;
+            else if (aIds[i] > bIds[j]) j++;
+            else {
+                best = Math.min(best, aDists[i++] + bDists[j++]);
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    // higher scores rank first, then lower indices
+    private static long key(long score, int index) {
+        return score << 32 | (Integer.MAX_VALUE - index);
+    }
+
+    private static void sortById(int[] ids, int[] dists) {
+        long[] packed = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            packed[i] = (long) ids[i] << 32 | dists[i];
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (int) (packed[i] >>> 32);
+            dists[i] = (int) packed[i];
+        }
+    }
+
+    /**
+     * The k largest keys offered, in a binary min-heap whose root is the key a
+     * new one has to beat; worst is read without the lock
+     */
+    private static final class TopK {
+        private final long[] heap;
+        private int size;
+        private volatile long worst = Long.MIN_VALUE;
+        private volatile boolean full;
+
+        TopK(int k) {
+            heap = new long[k];
+        }
+
+        boolean isFull() {
+            return full;
+        }
+
+        long worst() {
+            return worst;
+        }
+
+        synchronized void offer(long key) {
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0 && heap[(i - 1) >>> 1] > key) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = key;
+            }
+            else if (key > heap[0]) {
+                int i = 0;
+                while (2 * i + 1 < size) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                    if (key <= heap[child]) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = key;
+            }
+            else {
+                return;
+            }
+            if (size == heap.length) {
+                worst = heap[0];
+                full = true;
+            }
+        }
+
+        // keys from best to worst
+        synchronized long[] sorted() {
+            long[] keys = Arrays.copyOf(heap, size);
+            Arrays.sort(keys);
+            for (int i = 0, j = keys.length - 1; i < j; i++, j--) {
+                long swap = keys[i];
+                keys[i] = keys[j];
+                keys[j] = swap;
+            }
+            return keys;
+        }
+    }
+}
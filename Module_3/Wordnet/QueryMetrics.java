@@ -0,0 +1,336 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Process-wide instrumentation of the SAP, WordNet and Outcast hot paths:
+ * latency histograms per kind of query, BFS work, result cache traffic and
+ * construction timings, each also emitted as a JFR event.
+ *
+ * Off unless the JVM is started with -Dwordnet.metrics=true. ENABLED is a
+ * static final constant, so when it is false the JIT folds every recording
+ * call into nothing and the hot paths run exactly as uninstrumented code.
+ * Queries slower than -Dwordnet.metrics.slowQueryMicros (default 1000) are
+ * emitted as JFR events; all of them go into the histograms.
+ */
+public final class QueryMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("wordnet.metrics");
+    // queries at least this slow are also emitted as JFR events; every query
+    // goes into its histogram regardless
+    private static final long SLOW_QUERY_NANOS =
+            Long.getLong("wordnet.metrics.slowQueryMicros", 1000) * 1000;
+
+    /**
+     * Kinds of query with a latency histogram
+     */
+    public enum Query {
+        // SAP.length, ancestor, query and the slice lookups made by WordNet
+        SAP("sap.query"),
+        // WordNet.distance
+        DISTANCE("wordnet.distance"),
+        // WordNet.sap
+        ANCESTOR("wordnet.sap"),
+        // WordNet.relate
+        RELATE("wordnet.relate"),
+        // WordNet.nearest and withinDistance
+        NEAREST("wordnet.nearest"),
+        OUTCAST("outcast.outcast");
+
+        private final String label;
+
+        Query(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final Map<Query, LatencyHistogram> LATENCIES = new EnumMap<>(Query.class);
+    private static final LongAdder SEARCHES = new LongAdder();
+    private static final LongAdder VERTICES_VISITED = new LongAdder();
+    private static final LongAdder EDGES_VISITED = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_EVICTIONS = new LongAdder();
+    private static volatile WordNet.BuildTimings lastBuild;
+
+    static {
+        for (Query query: Query.values()) LATENCIES.put(query, new LatencyHistogram());
+        if (ENABLED) FlightRecorder.addPeriodicEvent(CountersEvent.class, QueryMetrics::emitCounters);
+    }
+
+    @Name("wordnet.SlowQuery")
+    @Label("Slow WordNet Query")
+    @Category("WordNet")
+    @StackTrace(false)
+    static final class SlowQueryEvent extends Event {
+        @Label("Query")
+        String query;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("wordnet.Search")
+    @Label("SAP Search")
+    @Category("WordNet")
+    @Description("Alternating BFS run on a result cache miss")
+    @StackTrace(false)
+    static final class SearchEvent extends Event {
+        @Label("Vertices Visited")
+        int vertices;
+
+        @Label("Edges Visited")
+        int edges;
+
+        @Label("Length")
+        int length;
+    }
+
+    @Name("wordnet.Build")
+    @Label("WordNet Build")
+    @Category("WordNet")
+    @StackTrace(false)
+    static final class BuildEvent extends Event {
+        @Label("Parse Synsets")
+        @Timespan(Timespan.MILLISECONDS)
+        long synsets;
+
+        @Label("Parse Hypernyms")
+        @Timespan(Timespan.MILLISECONDS)
+        long hypernyms;
+
+        @Label("Load")
+        @Timespan(Timespan.MILLISECONDS)
+        long load;
+
+        @Label("Validate")
+        @Timespan(Timespan.MILLISECONDS)
+        long validate;
+
+        @Label("Index")
+        @Timespan(Timespan.MILLISECONDS)
+        long index;
+
+        @Label("Total")
+        @Timespan(Timespan.MILLISECONDS)
+        long total;
+    }
+
+    @Name("wordnet.Counters")
+    @Label("WordNet Counters")
+    @Category("WordNet")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class CountersEvent extends Event {
+        @Label("Searches")
+        long searches;
+
+        @Label("Vertices Visited")
+        long vertices;
+
+        @Label("Edges Visited")
+        long edges;
+
+        @Label("Cache Hits")
+        long cacheHits;
+
+        @Label("Cache Evictions")
+        long cacheEvictions;
+    }
+
+    private QueryMetrics() { }
+
+    /**
+     * @return start time to pass to record, 0 when disabled
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a query that began at start
+     */
+    static void record(Query query, long start) {
+        if (!ENABLED) return;
+        long latency = System.nanoTime() - start;
+        LATENCIES.get(query).record(latency);
+        if (latency < SLOW_QUERY_NANOS) return;
+        SlowQueryEvent event = new SlowQueryEvent();
+        if (event.shouldCommit()) {
+            event.query = query.label;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records one BFS run of the SAP result cache misses
+     */
+    static void recordSearch(int vertices, int edges, int length) {
+        if (!ENABLED) return;
+        SEARCHES.increment();
+        VERTICES_VISITED.add(vertices);
+        EDGES_VISITED.add(edges);
+        SearchEvent event = new SearchEvent();
+        if (event.shouldCommit()) {
+            event.vertices = vertices;
+            event.edges = edges;
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    static void recordCacheHit() {
+        if (ENABLED) CACHE_HITS.increment();
+    }
+
+    static void recordCacheEviction() {
+        if (ENABLED) CACHE_EVICTIONS.increment();
+    }
+
+    static void recordBuild(WordNet.BuildTimings timings) {
+        if (!ENABLED) return;
+        lastBuild = timings;
+        BuildEvent event = new BuildEvent();
+        if (event.shouldCommit()) {
+            event.synsets = Math.round(timings.synsetsMillis());
+            event.hypernyms = Math.round(timings.hypernymsMillis());
+            event.load = Math.round(timings.loadMillis());
+            event.validate = Math.round(timings.validateMillis());
+            event.index = Math.round(timings.indexMillis());
+            event.total = Math.round(timings.totalMillis());
+            event.commit();
+        }
+    }
+
+    private static void emitCounters() {
+        CountersEvent event = new CountersEvent();
+        event.searches = SEARCHES.sum();
+        event.vertices = VERTICES_VISITED.sum();
+        event.edges = EDGES_VISITED.sum();
+        event.cacheHits = CACHE_HITS.sum();
+        event.cacheEvictions = CACHE_EVICTIONS.sum();
+        event.commit();
+    }
+
+    /**
+     * @return copy of everything recorded so far; all zero when disabled
+     */
+    public static Snapshot snapshot() {
+        Map<Query, LatencyHistogram> latencies = new EnumMap<>(Query.class);
+        for (Map.Entry<Query, LatencyHistogram> entry: LATENCIES.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().copy());
+        }
+        return new Snapshot(latencies, SEARCHES.sum(), VERTICES_VISITED.sum(), EDGES_VISITED.sum(),
+                            CACHE_HITS.sum(), CACHE_EVICTIONS.sum(), lastBuild);
+    }
+
+    /**
+     * Clears every histogram and counter, e.g. after a warmup
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram: LATENCIES.values()) histogram.reset();
+        SEARCHES.reset();
+        VERTICES_VISITED.reset();
+        EDGES_VISITED.reset();
+        CACHE_HITS.reset();
+        CACHE_EVICTIONS.reset();
+    }
+
+    /**
+     * Point-in-time copy of the metrics
+     */
+    public static final class Snapshot {
+        private final Map<Query, LatencyHistogram> latencies;
+        private final long searches;
+        private final long verticesVisited;
+        private final long edgesVisited;
+        private final long cacheHits;
+        private final long cacheEvictions;
+        private final WordNet.BuildTimings lastBuild;
+
+        private Snapshot(Map<Query, LatencyHistogram> latencies, long searches, long verticesVisited,
+                         long edgesVisited, long cacheHits, long cacheEvictions,
+                         WordNet.BuildTimings lastBuild) {
+            this.latencies = latencies;
+            this.searches = searches;
+            this.verticesVisited = verticesVisited;
+            this.edgesVisited = edgesVisited;
+            this.cacheHits = cacheHits;
+            this.cacheEvictions = cacheEvictions;
+            this.lastBuild = lastBuild;
+        }
+
+        /**
+         * @return latencies of the query in nanoseconds
+         */
+        public LatencyHistogram latency(Query query) {
+            return latencies.get(query);
+        }
+
+        /**
+         * @return number of BFS runs, one per result cache miss
+         */
+        public long searches() {
+            return searches;
+        }
+
+        public long verticesVisited() {
+            return verticesVisited;
+        }
+
+        public long edgesVisited() {
+            return edgesVisited;
+        }
+
+        public long cacheHits() {
+            return cacheHits;
+        }
+
+        public long cacheEvictions() {
+            return cacheEvictions;
+        }
+
+        /**
+         * @return fraction of cacheable SAP lookups answered from the cache
+         */
+        public double cacheHitRatio() {
+            long lookups = cacheHits + searches;
+            return lookups == 0 ? 0 : (double) cacheHits / lookups;
+        }
+
+        /**
+         * @return phase timings of the last WordNet built, null if none was
+         */
+        public WordNet.BuildTimings lastBuild() {
+            return lastBuild;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<Query, LatencyHistogram> entry: latencies.entrySet()) {
+                if (entry.getValue().count() == 0) continue;
+                text.append(String.format("%-18s %s ns%n", entry.getKey(), entry.getValue()));
+            }
+            text.append(String.format("searches %d, vertices %d, edges %d, cache hits %d (%.1f%%), evictions %d%n",
+                                      searches, verticesVisited, edgesVisited, cacheHits,
+                                      100 * cacheHitRatio(), cacheEvictions));
+            if (lastBuild != null) text.append("build ").append(lastBuild).append(System.lineSeparator());
+            return text.toString();
+        }
+    }
+}
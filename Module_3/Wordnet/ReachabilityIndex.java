@@ -0,0 +1,257 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reachability labels for a DAG, answering "can v reach w" mostly without a
+ * traversal. The hypernym edges are walked downwards from the roots by several
+ * randomized depth-first searches (GRAIL). Each search gives every vertex x an
+ * interval [low, post]: post is x's postorder rank and low the smallest rank
+ * below x, so if v reaches w then w's interval nests in v's, in every search.
+ * - nested in the DFS spanning tree of the first search: v reaches w
+ * - not nested in the interval of some search: v cannot reach w
+ * - otherwise a depth-first search up from v decides, skipping every vertex
+ *   whose intervals do not all hold w's
+ */
+public class ReachabilityIndex {
+    private static final int DEFAULT_TRAVERSALS = 3;
+
+    private final int vertices;
+    private final int traversals;
+    // intervals of v in search k are [labels[(v * traversals + k) * 2], labels[(v * traversals + k) * 2 + 1]]
+    private final int[] labels;
+    // preorder and postorder ranks of the first search, for its spanning tree
+    private final int[] preorder;
+    private final int[] postorder;
+    private final int[] offsets;
+    private final int[] targets;
+    private final long buildNanos;
+    private final ConcurrentLinkedDeque<Workspace> workspaces = new ConcurrentLinkedDeque<>();
+    private final LongAdder treeHits = new LongAdder();
+    private final LongAdder labelRejections = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+
+    // marks for the fallback search; a vertex is marked if mark[v] == epoch
+    private static final class Workspace {
+        private final int[] mark;
+        private final int[] stack;
+        private int epoch;
+
+        Workspace(int vertices) {
+            mark = new int[vertices];
+            stack = new int[vertices];
+        }
+    }
+
+    private ReachabilityIndex(CsrDigraph G, int traversals, int[] labels, int[] preorder, int[] postorder,
+                              long buildNanos) {
+        this.vertices = G.V();
+        this.traversals = traversals;
+        this.labels = labels;
+        this.preorder = preorder;
+        this.postorder = postorder;
+        this.offsets = G.offsets();
+        this.targets = G.targets();
+        this.buildNanos = buildNanos;
+    }
+
+    /**
+     * Builds the index with three randomized searches
+     * @param G the digraph, edges pointing from hyponym to hypernym
+     * @return the index, or null if G has a cycle
+     */
+    public static ReachabilityIndex build(CsrDigraph G) {
+        return build(G, DEFAULT_TRAVERSALS, 0);
+    }
+
+    /**
+     * @param G the digraph, edges pointing from hyponym to hypernym
+     * @param traversals number of randomized searches; more rejects more queries
+     * without a search at the cost of 8 bytes per vertex each
+     * @param seed seed for the child orders of the searches
+     * @return the index, or null if G has a cycle
+     */
+    public static ReachabilityIndex build(CsrDigraph G, int traversals, long seed) {
+        if (G == null) throw new IllegalArgumentException("Argument is null");
+        if (traversals < 1) throw new IllegalArgumentException("at least one traversal is needed");
+        long start = System.nanoTime();
+        if (G.topologicalOrder() == null) return null;
+        CsrDigraph down = G.reverse();
+        int[] downOffsets = down.offsets();
+        int[] downTargets = down.targets();
+        int V = G.V();
+        int[] labels = new int[2 * traversals * V];
+        int[] preorder = new int[V];
+        int[] postorder = new int[V];
+
+        // roots of the downward searches are the vertices without hypernyms
+        int[] roots = new int[V];
+        int rootCount = 0;
+        for (int v = 0; v < V; v++) {
+            if (G.outdegree(v) == 0) roots[rootCount++] = v;
+        }
+        Random random = new Random(seed);
+        boolean[] visited = new boolean[V];
+        int[] stack = new int[V];
+        // next child to visit of each vertex on the stack, counted from a random start
+        int[] cursor = new int[V];
+        int[] first = new int[V];
+        int[] low = new int[V];
+        for (int k = 0; k < traversals; k++) {
+            Arrays.fill(visited, false);
+            int rank = 0;
+            int preRank = 0;
+            for (int r = 0; r < rootCount; r++) {
+                int root = roots[k == 0 ? r : rootCount - 1 - r];
+                if (visited[root]) continue;
+                int top = 0;
+                stack[top++] = root;
+                visited[root] = true;
+                cursor[root] = 0;
+                first[root] = randomStart(random, downOffsets, root, k);
+                low[root] = Integer.MAX_VALUE;
+                if (k == 0) preorder[root] = preRank++;
+                while (top > 0) {
+                    int v = stack[top - 1];
+                    int degree = downOffsets[v + 1] - downOffsets[v];
+                    if (cursor[v] < degree) {
+                        int child = downTargets[downOffsets[v] + (first[v] + cursor[v]++) % degree];
+                        if (visited[child]) {
+                            // already finished: only its low reaches v
+                            low[v] = Math.min(low[v], labels[(child * traversals + k) * 2]);
+                            continue;
+                        }
+                        visited[child] = true;
+                        cursor[child] = 0;
+                        first[child] = randomStart(random, downOffsets, child, k);
+                        low[child] = Integer.MAX_VALUE;
+                        if (k == 0) preorder[child] = preRank++;
+                        stack[top++] = child;
+                    }
+                    else {
+                        top--;
+                        int post = rank++;
+                        int lowest = Math.min(low[v], post);
+                        labels[(v * traversals + k) * 2] = lowest;
+                        labels[(v * traversals + k) * 2 + 1] = post;
+                        if (k == 0) postorder[v] = post;
+                        if (top > 0) {
+                            int parent = stack[top - 1];
+                            low[parent] = Math.min(low[parent], lowest);
+                        }
+                    }
+                }
+            }
+        }
+        return new ReachabilityIndex(G, traversals, labels, preorder, postorder, System.nanoTime() - start);
+    }
+
+    // the first search keeps the edge order, later ones start at a random child
+    private static int randomStart(Random random, int[] offsets, int v, int traversal) {
+        int degree = offsets[v + 1] - offsets[v];
+        return traversal == 0 || degree < 2 ? 0 : random.nextInt(degree);
+    }
+
+    /**
+     * @return true if w is v or can be reached from v by following edges, i.e. w
+     * is v or one of its hypernyms
+     */
+    public boolean reachable(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        if (v == w) return true;
+        // labels come from the downward searches: w must be above v
+        if (preorder[w] <= preorder[v] && postorder[v] <= postorder[w]) {
+            treeHits.increment();
+            return true;
+        }
+        if (!nested(v, w)) {
+            labelRejections.increment();
+            return false;
+        }
+        searches.increment();
+        return search(v, w);
+    }
+
+    // whether the intervals of inner nest in those of outer in every search
+    private boolean nested(int inner, int outer) {
+        int i = inner * traversals * 2;
+        int o = outer * traversals * 2;
+        for (int k = 0; k < 2 * traversals; k += 2) {
+            if (labels[i + k] < labels[o + k] || labels[i + k + 1] > labels[o + k + 1]) return false;
+        }
+        return true;
+    }
+
+    // depth-first search up from v for w, skipping vertices whose labels rule w out
+    private boolean search(int v, int w) {
+        Workspace workspace = workspaces.pollFirst();
+        if (workspace == null) workspace = new Workspace(vertices);
+        try {
+            if (++workspace.epoch == 0) {
+                Arrays.fill(workspace.mark, 0);
+                workspace.epoch = 1;
+            }
+            int epoch = workspace.epoch;
+            int[] mark = workspace.mark;
+            int[] stack = workspace.stack;
+            int top = 0;
+            mark[v] = epoch;
+            stack[top++] = v;
+            while (top > 0) {
+                int x = stack[--top];
+                for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+                    int y = targets[e];
+                    if (y == w) return true;
+                    if (mark[y] == epoch) continue;
+                    mark[y] = epoch;
+                    if (nested(y, w)) stack[top++] = y;
+                }
+            }
+            return false;
+        } finally {
+            workspaces.offerFirst(workspace);
+        }
+    }
+
+    /**
+     * @return number of queries answered by the spanning tree intervals
+     */
+    public long treeHits() {
+        return treeHits.sum();
+    }
+
+    /**
+     * @return number of queries answered no by the search intervals alone
+     */
+    public long labelRejections() {
+        return labelRejections.sum();
+    }
+
+    /**
+     * @return number of queries that needed a pruned search
+     */
+    public long searches() {
+        return searches.sum();
+    }
+
+    /**
+     * @return approximate heap bytes of the labels, excluding the shared digraph
+     */
+    public long memoryBytes() {
+        return 3L * 16 + 4L * (labels.length + preorder.length + postorder.length);
+    }
+
+    /**
+     * @return time spent building the index, in milliseconds
+     */
+    public double buildMillis() {
+        return buildNanos / 1e6;
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= vertices)
+            throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (vertices - 1));
+    }
+}
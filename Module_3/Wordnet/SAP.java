@@ -1,266 +1,1383 @@
 import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.Queue;
-import edu.princeton.cs.algs4.Bag;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
+/**
+ * Shortest ancestral path queries over a digraph. The CSR digraph is never
+ * modified after construction, so one SAP may be shared by many threads; each
+ * query borrows its own BFS scratch buffers from a bounded pool
+ */
 public class SAP {
+    /**
+     * Bounded cache of query results keyed on the canonical vertex sets of a
+     * query. Keys are hashed to 64 bits and stored once in int arrays; values are
+     * (ancestor, length) packed into a long, so a lookup allocates nothing. The
+     * table is split into segments, each an open-addressed linear probing table
+     * with its own lock and CLOCK (second-chance) eviction
+     */
     private static final class BfsCache {
-        private final LinkedHashMap<String, String> cache;
+        private static final int SEGMENTS = 16;
+        private final Segment[] segments;
+
+        BfsCache(int capacity) {
+            int segmentCount = capacity < SEGMENTS * 64 ? 1 : SEGMENTS;
+            int perSegment = Math.max(1, (capacity + segmentCount - 1) / segmentCount);
+            segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = new Segment(perSegment);
+            }
+        }
+
+        private Segment segmentFor(long hash) {
+            return segments[(int) (hash >>> 60) & (segments.length - 1)];
+        }
+
+        /**
+         * @return packed value for the key, or NO_ENTRY if it is not cached
+         */
+        long get(long hash, int[] key, int keyLength) {
+            return segmentFor(hash).get(hash, key, keyLength);
+        }
+
+        void put(long hash, int[] key, int keyLength, long value) {
+            segmentFor(hash).put(hash, key, keyLength, value);
+        }
+
+        long hits() {
+            long total = 0;
+            for (Segment segment: segments) total += segment.hits();
+            return total;
+        }
+
+        long misses() {
+            long total = 0;
+            for (Segment segment: segments) total += segment.misses();
+            return total;
+        }
+
+        long evictions() {
+            long total = 0;
+            for (Segment segment: segments) total += segment.evictions();
+            return total;
+        }
+
+        /**
+         * Puts every cached entry whose key holds no stale vertex into target
+         */
+        void copyInto(BfsCache target, boolean[] stale) {
+            for (Segment segment: segments) segment.copyInto(target, stale);
+        }
+    }
+
+    private static final class Segment {
+        private static final int EMPTY = -1;
         private final int capacity;
+        private final int mask;
+        // hash slot -> entry index, EMPTY if the slot is free
+        private final int[] table;
+        // entry index -> key hash, key ints, packed value and CLOCK reference bit
+        private final long[] hashes;
+        private final int[][] keys;
+        private final long[] values;
+        private final boolean[] referenced;
+        private int size;
+        private int hand;
+        private long hits;
+        private long misses;
+        private long evictions;
 
-        public BfsCache(int capacity) {
+        Segment(int capacity) {
             this.capacity = capacity;
-            this.cache = new LinkedHashMap<String, String>(capacity, (float) 0.75, true);
+            int slots = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            mask = slots - 1;
+            table = new int[slots];
+            Arrays.fill(table, EMPTY);
+            hashes = new long[capacity];
+            keys = new int[capacity][];
+            values = new long[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        synchronized long get(long hash, int[] key, int keyLength) {
+            int entry = find(hash, key, keyLength);
+            if (entry == EMPTY) {
+                misses++;
+                return NO_ENTRY;
+            }
+            hits++;
+            referenced[entry] = true;
+            return values[entry];
+        }
+
+        synchronized void put(long hash, int[] key, int keyLength, long value) {
+            int entry = find(hash, key, keyLength);
+            if (entry != EMPTY) {
+                // another query computed the same key concurrently
+                values[entry] = value;
+                referenced[entry] = true;
+                return;
+            }
+            if (size < capacity) {
+                entry = size++;
+            }
+            else {
+                entry = evict();
+            }
+            int[] stored = keys[entry];
+            if (stored == null || stored.length != keyLength) {
+                stored = new int[keyLength];
+                keys[entry] = stored;
+            }
+            System.arraycopy(key, 0, stored, 0, keyLength);
+            hashes[entry] = hash;
+            values[entry] = value;
+            referenced[entry] = false;
+            int slot = (int) hash & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry;
+        }
+
+        synchronized long hits() {
+            return hits;
+        }
+
+        synchronized long misses() {
+            return misses;
+        }
+
+        synchronized long evictions() {
+            return evictions;
+        }
+
+        synchronized void copyInto(BfsCache target, boolean[] stale) {
+            for (int entry = 0; entry < size; entry++) {
+                int[] key = keys[entry];
+                boolean keep = true;
+                // key[0] is the size of the v side, the rest are vertices
+                for (int i = 1; i < key.length && keep; i++) {
+                    keep = key[i] >= stale.length || !stale[key[i]];
+                }
+                if (keep) target.put(hashes[entry], key, key.length, values[entry]);
+            }
+        }
+
+        private int find(long hash, int[] key, int keyLength) {
+            int slot = (int) hash & mask;
+            while (table[slot] != EMPTY) {
+                int entry = table[slot];
+                if (hashes[entry] == hash && keyEquals(keys[entry], key, keyLength)) {
+                    return entry;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return EMPTY;
+        }
+
+        /**
+         * Advances the CLOCK hand past recently referenced entries, clearing their
+         * bit, and unlinks the first entry that was not referenced since the last sweep
+         * @return index of the freed entry
+         */
+        private int evict() {
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = (hand + 1) % capacity;
+            }
+            int victim = hand;
+            hand = (hand + 1) % capacity;
+            unlink(victim);
+            evictions++;
+            QueryMetrics.recordCacheEviction();
+            return victim;
+        }
+
+        /**
+         * Removes the entry from the probe table using backward shift deletion so
+         * no tombstones are left behind
+         * @param entry entry index to remove
+         */
+        private void unlink(int entry) {
+            int i = (int) hashes[entry] & mask;
+            while (table[i] != entry) {
+                i = (i + 1) & mask;
+            }
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (table[j] == EMPTY) break;
+                int home = (int) hashes[table[j]] & mask;
+                boolean inRange = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (inRange) continue;
+                table[i] = table[j];
+                i = j;
+            }
+            table[i] = EMPTY;
+        }
+
+        private static boolean keyEquals(int[] stored, int[] key, int keyLength) {
+            if (stored.length != keyLength) return false;
+            for (int i = 0; i < keyLength; i++) {
+                if (stored[i] != key[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Immutable answer to a combined length/ancestor query
+     */
+    public static final class Result {
+        private final int ancestor;
+        private final int length;
+        private final int[] path;
+        private final int visitedVertices;
+
+        private Result(int ancestor, int length, int[] path, int visitedVertices) {
+            this.ancestor = ancestor;
+            this.length = length;
+            this.path = path;
+            this.visitedVertices = visitedVertices;
+        }
+
+        /**
+         * @return common ancestor in the shortest ancestral path, -1 if none
+         */
+        public int ancestor() {
+            return ancestor;
+        }
+
+        /**
+         * @return length of the shortest ancestral path, -1 if none
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * @return vertices of the path from a v-side source through the ancestor to a
+         * w-side source, or null if the path was not requested
+         */
+        public Iterable<Integer> path() {
+            if (path == null) return null;
+            List<Integer> vertices = new ArrayList<>(path.length);
+            for (int vertex: path) vertices.add(vertex);
+            return Collections.unmodifiableList(vertices);
+        }
+
+        /**
+         * @return vertices labelled by the BFS that answered this query (both
+         * sides, sources included), 0 if it came from the cache
+         */
+        public int visitedVertices() {
+            return visitedVertices;
+        }
+
+        @Override
+        public String toString() {
+            return "ancestor=" + ancestor + ", length=" + length + ", visited=" + visitedVertices;
+        }
+    }
+
+    /**
+     * BFS scratch state owned by a single query at a time. Instances are
+     * borrowed from the SAP scratch pool and returned once the query finishes
+     */
+    private static final class BfsScratch {
+        private final int[] distFromV;
+        private final int[] distFromW;
+        // BFS tree parent of each labelled vertex, -1 for sources
+        private final int[] edgeToV;
+        private final int[] edgeToW;
+        // BFS queues; every labelled vertex is enqueued exactly once, so
+        // queue[0, tail) is also the list of entries to reset
+        private final int[] vQueue;
+        private final int[] wQueue;
+        private int vTail;
+        private int wTail;
+        private int shortestCommonAncestor;
+        private int shortestCommonLength;
+        // vertices labelled by the last BFS run, 0 when answered from the cache
+        private int visitedVertices;
+        // edges scanned by the last BFS run, counted only while metrics are enabled
+        private int visitedEdges;
+        // canonical key of the current query: [|v|, sorted v..., sorted w...]
+        private int[] key;
+        private int keyLength;
+        // multi-source BFS state, allocated on first use: bit b of seenBits[x]
+        // is set once source set b reached x, frontierBits and nextBits hold the
+        // bits that reached x on the current and next level; all are zero
+        // between sweeps
+        private long[] seenBits;
+        private long[] frontierBits;
+        private long[] nextBits;
+        private int[] frontier;
+        private int[] nextFrontier;
+        private int[] touched;
+        // binary min-heap of length << 32 | vertex for neighborhood searches,
+        // grown on demand
+        private long[] heap = new long[0];
+        private int heapSize;
+
+        BfsScratch(int vertices) {
+            distFromV = new int[vertices];
+            distFromW = new int[vertices];
+            edgeToV = new int[vertices];
+            edgeToW = new int[vertices];
+            Arrays.fill(distFromV, -1);
+            Arrays.fill(distFromW, -1);
+            vQueue = new int[vertices];
+            wQueue = new int[vertices];
+            shortestCommonAncestor = -1;
+            shortestCommonLength = Integer.MAX_VALUE;
+            key = new int[16];
+        }
+
+        void ensureBitState() {
+            if (seenBits != null) return;
+            int vertices = distFromV.length;
+            seenBits = new long[vertices];
+            frontierBits = new long[vertices];
+            nextBits = new long[vertices];
+            frontier = new int[vertices];
+            nextFrontier = new int[vertices];
+            touched = new int[vertices];
+        }
+
+        void push(long entry) {
+            if (heapSize == heap.length) heap = Arrays.copyOf(heap, Math.max(64, 2 * heapSize));
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= entry) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = entry;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--heapSize];
+            int i = 0;
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+                if (last <= heap[child]) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (heapSize > 0) heap[i] = last;
+            return top;
+        }
+
+        void setKey(int v, int w) {
+            key[0] = 1;
+            key[1] = v;
+            key[2] = w;
+            keyLength = 3;
+        }
+
+        void setKey(Iterable<Integer> v, Iterable<Integer> w) {
+            keyLength = 1;
+            int vCount = appendSorted(v);
+            key[0] = vCount;
+            appendSorted(w);
+        }
+
+        void setKey(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+            keyLength = 1;
+            int vCount = appendSorted(v, vFrom, vTo);
+            key[0] = vCount;
+            appendSorted(w, wFrom, wTo);
         }
 
-        private String createCacheKey(Iterable<Integer> vNodes, Iterable<Integer> wNodes) {
-            StringBuilder key = new StringBuilder();
-            for (int v: vNodes) {
-                key.append(v).append("|");
+        /**
+         * Appends the vertices sorted and without duplicates to the key
+         * @return number of distinct vertices appended
+         */
+        private int appendSorted(Iterable<Integer> vertices) {
+            int start = keyLength;
+            for (int vertex: vertices) {
+                if (keyLength == key.length) key = Arrays.copyOf(key, key.length * 2);
+                key[keyLength++] = vertex;
             }
-            key.append(":");
-            for (int w: wNodes) {
-                key.append(w).append("|");
+            return sortAppended(start);
+        }
+
+        private int appendSorted(int[] vertices, int from, int to) {
+            int start = keyLength;
+            if (key.length < start + to - from) {
+                key = Arrays.copyOf(key, Math.max(key.length * 2, start + to - from));
             }
-            return key.toString();
+            System.arraycopy(vertices, from, key, start, to - from);
+            keyLength += to - from;
+            return sortAppended(start);
         }
 
-        public String getValue(Iterable<Integer> vNodes, Iterable<Integer> wNodes) {
-            String cacheKey = createCacheKey(vNodes, wNodes);
-            if (cache.size() >= capacity) {
-                String firstKey = cache.keySet().iterator().next();
-                cache.remove(firstKey);
+        private int sortAppended(int start) {
+            Arrays.sort(key, start, keyLength);
+            int distinct = start;
+            for (int i = start; i < keyLength; i++) {
+                if (i == start || key[i] != key[distinct - 1]) key[distinct++] = key[i];
             }
-            return cache.get(cacheKey);
+            keyLength = distinct;
+            return distinct - start;
         }
 
-        public void setValue(Iterable<Integer> vNodes, Iterable<Integer> wNodes,
-                             int commonAncestor, int pathLength) {
-            String cacheKey = createCacheKey(vNodes, wNodes);
-            cache.put(cacheKey, commonAncestor + "," + pathLength);
+        long keyHash() {
+            long hash = 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < keyLength; i++) {
+                hash = (hash ^ key[i]) * 0xBF58476D1CE4E5B9L;
+                hash ^= hash >>> 31;
+            }
+            // murmur3 finalizer
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB9FE1A85EC53L;
+            hash ^= hash >>> 33;
+            return hash;
         }
     }
 
-    private final Digraph digraph;
-    private int[] distFromV;
-    private int[] distFromW;
-    private Bag<Integer> vEntriesChanged;
-    private Bag<Integer> wEntriesChanged;
-    private int shortestCommonAncestor;
-    private int shortestCommonLength;
+    // packed cache value meaning the key is not cached
+    private static final long NO_ENTRY = Long.MIN_VALUE;
+    // batches with at least this many vertex sets are computed in parallel by default
+    private static final int PARALLEL_BATCH_THRESHOLD = 64;
+    // source sets advanced together by one multi-source sweep, one bit each
+    private static final int SWEEP_WIDTH = Long.SIZE;
+
+    /**
+     * Called by a multi-source sweep for every vertex some source sets reach for
+     * the first time
+     */
+    private interface SweepVisitor {
+        /**
+         * @param vertex the vertex reached
+         * @param sets bit b is set if source set b reached vertex at this depth
+         * @param depth distance from those source sets
+         * @return bits of the source sets that need not be expanded any further
+         */
+        long visit(int vertex, long sets, int depth);
+    }
+
+    /**
+     * Called by a neighborhood search for every vertex, in nondecreasing order
+     * of ancestral path length from the sources
+     */
+    interface NeighborVisitor {
+        /**
+         * @return false to stop the search
+         */
+        boolean visit(int vertex, int length);
+    }
+
+    // the digraph in CSR form; offsets and targets are its arrays, read directly
+    private final CsrDigraph digraph;
+    private final int[] offsets;
+    private final int[] targets;
     private final BfsCache cache;
+    // idle scratch buffers, at most maxScratch are ever created
+    private final LinkedBlockingDeque<BfsScratch> scratchPool;
+    private final AtomicInteger scratchCreated;
+    private final int maxScratch;
+    private final LongAdder verticesVisited = new LongAdder();
+    // built on first use; null if the digraph has a cycle. The volatile flag is
+    // written after the index, so a reader that sees it set sees the index
+    private ReachabilityIndex reachability;
+    private volatile boolean reachabilityBuilt;
+    // reverse of the digraph, built on first neighborhood search
+    private volatile CsrDigraph reverse;
 
+    /**
+     * Creates a SAP that serves up to one concurrent query per available processor
+     * @param G the digraph, copied so later changes to G are not observed
+     */
     public SAP(Digraph G) {
+        this(G, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a SAP whose queries may be called from any number of threads
+     * (platform or virtual); at most {@code parallelism} of them run a BFS at the
+     * same time, the others wait for a scratch buffer to be released
+     * @param G the digraph, copied so later changes to G are not observed
+     * @param parallelism maximum number of BFS scratch buffers
+     */
+    public SAP(Digraph G, int parallelism) {
+        this(CsrDigraph.of(checkNotNull(G)), parallelism);
+    }
+
+    /**
+     * Creates a SAP over an immutable CSR digraph, which is shared rather than copied
+     * @param G the digraph
+     * @param parallelism maximum number of BFS scratch buffers
+     */
+    public SAP(CsrDigraph G, int parallelism) {
+        if (G == null) throw new IllegalArgumentException("Digraph cannot be null");
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+        this.digraph = G;
+        this.offsets = G.offsets();
+        this.targets = G.targets();
+        cache = new BfsCache(Math.max(1, G.V() + G.E()));
+        scratchPool = new LinkedBlockingDeque<>();
+        scratchCreated = new AtomicInteger();
+        maxScratch = parallelism;
+    }
+
+    /**
+     * Creates a SAP over G, a digraph grown from the one of previous by added
+     * vertices or edges, that starts with the cached results of previous except
+     * those whose vertex sets hold a stale vertex. Adding v->w changes the
+     * ancestors of exactly the vertices that reach v, so only queries on those
+     * need to be marked stale; new vertices appear in no cached query
+     * @param stale stale[x] is true if queries on x may have a different answer in G
+     * @param reverse reverse of G if the caller already has it, else null to
+     * build it on first use
+     */
+    SAP(CsrDigraph G, int parallelism, SAP previous, boolean[] stale, CsrDigraph reverse) {
+        this(G, parallelism);
+        previous.cache.copyInto(cache, stale);
+        if (reverse != null && reverse.V() != G.V()) throw new IllegalArgumentException("reverse has another size");
+        this.reverse = reverse;
+    }
+
+    private static Digraph checkNotNull(Digraph G) {
         if (G == null) throw new IllegalArgumentException("Digraph cannot be null");
-        this.digraph = new Digraph(G);
-        cache = new BfsCache(G.V() + G.E());
-        distFromV = new int[G.V()];
-        distFromW = new int[G.V()];
-        Arrays.fill(distFromV, -1);
-        Arrays.fill(distFromW, -1);
-        vEntriesChanged = new Bag<>();
-        wEntriesChanged = new Bag<>();
-        shortestCommonAncestor = -1;
-        shortestCommonLength = Integer.MAX_VALUE;
+        return G;
     }
 
     public int length(int v, int w) {
         validateVertex(v);
         validateVertex(w);
 
-        String value = cache.getValue(Collections.singletonList(v), Collections.singletonList(w));
+        long start = QueryMetrics.start();
+        BfsScratch scratch = borrowScratch();
+        try {
+            scratch.setKey(v, w);
+            return unpackLength(lookupOrSearch(scratch));
+        } finally {
+            releaseScratch(scratch);
+            QueryMetrics.record(QueryMetrics.Query.SAP, start);
+        }
+    }
+
+    public int ancestor(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
 
-        if (value != null) {
-            return Integer.parseInt(value.split(",")[1]);
+        long start = QueryMetrics.start();
+        BfsScratch scratch = borrowScratch();
+        try {
+            scratch.setKey(v, w);
+            return unpackAncestor(lookupOrSearch(scratch));
+        } finally {
+            releaseScratch(scratch);
+            QueryMetrics.record(QueryMetrics.Query.SAP, start);
         }
+    }
 
-        resetQueryState();
-        Queue<Integer> vQueue = new Queue<>();
-        Queue<Integer> wQueue = new Queue<>();
+    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        validateVertices(v);
+        validateVertices(w);
 
-        vQueue.enqueue(v);
-        distFromV[v] = 0;
-        vEntriesChanged.add(v);
+        long start = QueryMetrics.start();
+        BfsScratch scratch = borrowScratch();
+        try {
+            scratch.setKey(v, w);
+            return unpackLength(lookupOrSearch(scratch));
+        } finally {
+            releaseScratch(scratch);
+            QueryMetrics.record(QueryMetrics.Query.SAP, start);
+        }
+    }
 
-        wQueue.enqueue(w);
-        distFromW[w] = 0;
-        wEntriesChanged.add(w);
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        validateVertices(v);
+        validateVertices(w);
 
-        runAlternatingBreadthFirstSearch(vQueue, wQueue);
-        if (this.shortestCommonLength != Integer.MAX_VALUE) {
-            cache.setValue(Collections.singletonList(v), Collections.singletonList(w),
-                           shortestCommonAncestor, shortestCommonLength);
-            return shortestCommonLength;
+        long start = QueryMetrics.start();
+        BfsScratch scratch = borrowScratch();
+        try {
+            scratch.setKey(v, w);
+            return unpackAncestor(lookupOrSearch(scratch));
+        } finally {
+            releaseScratch(scratch);
+            QueryMetrics.record(QueryMetrics.Query.SAP, start);
         }
-        return -1;
     }
 
-    public int ancestor(int v, int w) {
+    /**
+     * Finds the shortest ancestral path between v and w in one traversal
+     * @param v first vertex
+     * @param w second vertex
+     * @param includePath whether the result should carry the path itself; this
+     *                    always runs the BFS since only lengths are cached
+     * @return ancestor and length, both -1 if v and w have no common ancestor
+     */
+    public Result query(int v, int w, boolean includePath) {
         validateVertex(v);
         validateVertex(w);
 
-        String value = cache.getValue(Collections.singletonList(v), Collections.singletonList(w));
-        if (value != null) {
-            return Integer.parseInt(value.split(",")[0]);
+        long start = QueryMetrics.start();
+        BfsScratch scratch = borrowScratch();
+        try {
+            scratch.setKey(v, w);
+            return buildResult(scratch, includePath);
+        } finally {
+            releaseScratch(scratch);
+            QueryMetrics.record(QueryMetrics.Query.SAP, start);
+        }
+    }
+
+    /**
+     * Finds the shortest ancestral path between any vertex in v and any vertex
+     * in w in one traversal
+     * @param v first set of vertices
+     * @param w second set of vertices
+     * @param includePath whether the result should carry the path itself; this
+     *                    always runs the BFS since only lengths are cached
+     * @return ancestor and length, both -1 if there is no common ancestor
+     */
+    public Result query(Iterable<Integer> v, Iterable<Integer> w, boolean includePath) {
+        validateVertices(v);
+        validateVertices(w);
+
+        long start = QueryMetrics.start();
+        BfsScratch scratch = borrowScratch();
+        try {
+            scratch.setKey(v, w);
+            return buildResult(scratch, includePath);
+        } finally {
+            releaseScratch(scratch);
+            QueryMetrics.record(QueryMetrics.Query.SAP, start);
         }
+    }
+
+    /**
+     * Slice-based query used by WordNet on its flat noun tables
+     * @return packed (ancestor, length), see unpackAncestor and unpackLength
+     */
+    long find(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        validateVertices(v, vFrom, vTo);
+        validateVertices(w, wFrom, wTo);
 
-        resetQueryState();
-        Queue<Integer> vQueue = new Queue<>();
-        Queue<Integer> wQueue = new Queue<>();
+        long start = QueryMetrics.start();
+        BfsScratch scratch = borrowScratch();
+        try {
+            scratch.setKey(v, vFrom, vTo, w, wFrom, wTo);
+            return lookupOrSearch(scratch);
+        } finally {
+            releaseScratch(scratch);
+            QueryMetrics.record(QueryMetrics.Query.SAP, start);
+        }
+    }
 
-        vQueue.enqueue(v);
-        distFromV[v] = 0;
-        vEntriesChanged.add(v);
+    public Result query(int v, int w) {
+        return query(v, w, false);
+    }
 
-        wQueue.enqueue(w);
-        distFromW[w] = 0;
-        wEntriesChanged.add(w);
+    public Result query(Iterable<Integer> v, Iterable<Integer> w) {
+        return query(v, w, false);
+    }
 
-        runAlternatingBreadthFirstSearch(vQueue, wQueue);
-        if (shortestCommonAncestor != -1) {
-            cache.setValue(Collections.singletonList(v), Collections.singletonList(w),
-                           this.shortestCommonAncestor, this.shortestCommonLength);
+    private Result buildResult(BfsScratch scratch, boolean includePath) {
+        if (!includePath) {
+            long value = lookupOrSearch(scratch);
+            return new Result(unpackAncestor(value), unpackLength(value), null,
+                              scratch.visitedVertices);
         }
-        return this.shortestCommonAncestor;
+        long value = search(scratch, scratch.keyHash());
+        int ancestor = unpackAncestor(value);
+        return new Result(ancestor, unpackLength(value), tracePath(scratch, ancestor),
+                          scratch.visitedVertices);
     }
 
-    public int length(Iterable<Integer> v, Iterable<Integer> w) {
-        validateVertices(v);
-        validateVertices(w);
+    /**
+     * Walks both BFS trees from the ancestor back to their sources
+     * @return vertices from a v-side source through the ancestor to a w-side source
+     */
+    private static int[] tracePath(BfsScratch scratch, int ancestor) {
+        if (ancestor == -1) return new int[0];
+        int[] path = new int[scratch.distFromV[ancestor] + scratch.distFromW[ancestor] + 1];
+        int index = scratch.distFromV[ancestor];
+        for (int x = ancestor; x != -1; x = scratch.edgeToV[x]) {
+            path[index--] = x;
+        }
+        index = scratch.distFromV[ancestor];
+        for (int x = ancestor; x != -1; x = scratch.edgeToW[x]) {
+            path[index++] = x;
+        }
+        return path;
+    }
+
+    /**
+     * All-pairs shortest ancestral path lengths between the given vertex sets,
+     * in parallel when there are many of them
+     * @see #lengths(List, boolean)
+     */
+    public int[][] lengths(List<? extends Iterable<Integer>> sources) {
+        return lengths(sources, sources.size() >= PARALLEL_BATCH_THRESHOLD);
+    }
+
+    /**
+     * All-pairs shortest ancestral path lengths between the given vertex sets.
+     * Collects the ancestors of every set and their distances with bit-parallel
+     * sweeps of 64 sets each, then each row scatters its own ancestors into a scratch distance array and
+     * scans the ancestor lists of the later sets against it, so every pair costs
+     * a pass over one short ancestor list instead of a BFS
+     * @param sources vertex sets, one per row and column of the result
+     * @param parallel whether to fill rows on the common fork-join pool
+     * @return symmetric matrix, entry [i][j] is length(sources[i], sources[j])
+     */
+    public int[][] lengths(List<? extends Iterable<Integer>> sources, boolean parallel) {
+        if (sources == null) throw new IllegalArgumentException("sources cannot be null");
+        return lengths(toArrays(sources), parallel);
+    }
+
+    /**
+     * Same as lengths(List, boolean) over vertex sets given as int arrays; used by
+     * WordNet on its flat noun tables
+     */
+    int[][] lengths(int[][] sources, boolean parallel) {
+        for (int[] source: sources) {
+            validateVertices(source, 0, source.length);
+        }
+        int n = sources.length;
+        int[][] closureIds = new int[n][];
+        int[][] closureDists = new int[n][];
+        int[][] matrix = new int[n][n];
+
+        closures(sources, closureIds, closureDists, parallel);
+
+        IntStream rows = IntStream.range(0, n);
+        if (parallel) rows = rows.parallel();
+        rows.forEach(i -> {
+            BfsScratch scratch = borrowScratch();
+            try {
+                resetQueryState(scratch);
+                int[] dist = scratch.distFromV;
+                int[] ids = closureIds[i];
+                for (int k = 0; k < ids.length; k++) {
+                    dist[ids[k]] = closureDists[i][k];
+                    scratch.vQueue[scratch.vTail++] = ids[k];
+                }
+                for (int j = i; j < n; j++) {
+                    int best = Integer.MAX_VALUE;
+                    int[] otherIds = closureIds[j];
+                    int[] otherDists = closureDists[j];
+                    for (int k = 0; k < otherIds.length; k++) {
+                        int d = dist[otherIds[k]];
+                        if (d != -1 && d + otherDists[k] < best) best = d + otherDists[k];
+                    }
+                    int length = best == Integer.MAX_VALUE ? -1 : best;
+                    matrix[i][j] = length;
+                    matrix[j][i] = length;
+                }
+            } finally {
+                releaseScratch(scratch);
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Shortest ancestral path lengths from one vertex to each of many others
+     * @see #lengths(Iterable, List)
+     */
+    public int[] lengths(int v, int[] ws) {
+        validateVertex(v);
+        if (ws == null) throw new IllegalArgumentException("Argument is null");
+        validateVertices(ws, 0, ws.length);
+        int[][] targetSets = new int[ws.length][];
+        for (int i = 0; i < ws.length; i++) {
+            targetSets[i] = new int[] { ws[i] };
+        }
+        return lengths(new int[] { v }, targetSets, ws.length >= PARALLEL_BATCH_THRESHOLD);
+    }
+
+    /**
+     * Shortest ancestral path lengths from one vertex set to each of many others,
+     * e.g. one query noun against a list of candidates. The ancestors of v are
+     * labelled once; the target sets are then advanced 64 at a time by one
+     * bit-parallel sweep each, and a set drops out of its sweep as soon as it
+     * cannot improve on the best length it has found
+     * @param v source vertices
+     * @param ws target vertex sets
+     * @return entry [i] is length(v, ws.get(i))
+     */
+    public int[] lengths(Iterable<Integer> v, List<? extends Iterable<Integer>> ws) {
+        if (ws == null) throw new IllegalArgumentException("Argument is null");
+        return lengths(toArray(v), toArrays(ws), ws.size() >= PARALLEL_BATCH_THRESHOLD);
+    }
+
+    /**
+     * Same as lengths(Iterable, List) over vertex sets given as int arrays
+     */
+    int[] lengths(int[] v, int[][] ws, boolean parallel) {
+        validateVertices(v, 0, v.length);
+        for (int[] w: ws) {
+            validateVertices(w, 0, w.length);
+        }
+        int[] sourceIds;
+        int[] sourceDists;
+        BfsScratch scratch = borrowScratch();
+        try {
+            collectAncestors(scratch, v);
+            sourceIds = Arrays.copyOf(scratch.vQueue, scratch.vTail);
+            sourceDists = new int[sourceIds.length];
+            for (int k = 0; k < sourceIds.length; k++) {
+                sourceDists[k] = scratch.distFromV[sourceIds[k]];
+            }
+        } finally {
+            releaseScratch(scratch);
+        }
+
+        int[] lengths = new int[ws.length];
+        IntStream batches = IntStream.range(0, (ws.length + SWEEP_WIDTH - 1) / SWEEP_WIDTH);
+        if (parallel) batches = batches.parallel();
+        batches.forEach(batch -> {
+            int from = batch * SWEEP_WIDTH;
+            int count = Math.min(SWEEP_WIDTH, ws.length - from);
+            BfsScratch batchScratch = borrowScratch();
+            try {
+                resetQueryState(batchScratch);
+                int[] distFromV = batchScratch.distFromV;
+                for (int k = 0; k < sourceIds.length; k++) {
+                    distFromV[sourceIds[k]] = sourceDists[k];
+                    batchScratch.vQueue[batchScratch.vTail++] = sourceIds[k];
+                }
+                int[] best = new int[count];
+                Arrays.fill(best, Integer.MAX_VALUE);
+                sweep(batchScratch, ws, from, count, (vertex, sets, depth) -> {
+                    long done = 0;
+                    int d = distFromV[vertex];
+                    for (long bits = sets; bits != 0; bits &= bits - 1) {
+                        int set = Long.numberOfTrailingZeros(bits);
+                        if (d != -1 && depth + d < best[set]) best[set] = depth + d;
+                        // every vertex reached later is at least depth + 1 away
+                        if (best[set] <= depth + 1) done |= 1L << set;
+                    }
+                    return done;
+                });
+                for (int k = 0; k < count; k++) {
+                    lengths[from + k] = best[k] == Integer.MAX_VALUE ? -1 : best[k];
+                }
+                resetQueryState(batchScratch);
+            } finally {
+                releaseScratch(batchScratch);
+            }
+        });
+        return lengths;
+    }
+
+    /**
+     * Collects every ancestor of each source set and its distance from the set,
+     * in BFS order, sweeping 64 sets at a time
+     * @param sources vertex sets, already validated
+     * @param ids receives the ancestors of sources[i] in ids[i]
+     * @param dists receives their distances in dists[i]
+     * @param parallel whether to run the sweeps on the common fork-join pool
+     */
+    void closures(int[][] sources, int[][] ids, int[][] dists, boolean parallel) {
+        IntStream batches = IntStream.range(0, (sources.length + SWEEP_WIDTH - 1) / SWEEP_WIDTH);
+        if (parallel) batches = batches.parallel();
+        batches.forEach(batch -> {
+            int from = batch * SWEEP_WIDTH;
+            int count = Math.min(SWEEP_WIDTH, sources.length - from);
+            int[] sizes = new int[count];
+            for (int k = 0; k < count; k++) {
+                ids[from + k] = new int[16];
+                dists[from + k] = new int[16];
+            }
+            BfsScratch scratch = borrowScratch();
+            try {
+                sweep(scratch, sources, from, count, (vertex, sets, depth) -> {
+                    for (long bits = sets; bits != 0; bits &= bits - 1) {
+                        int set = Long.numberOfTrailingZeros(bits);
+                        int i = from + set;
+                        if (sizes[set] == ids[i].length) {
+                            ids[i] = Arrays.copyOf(ids[i], 2 * sizes[set]);
+                            dists[i] = Arrays.copyOf(dists[i], 2 * sizes[set]);
+                        }
+                        ids[i][sizes[set]] = vertex;
+                        dists[i][sizes[set]++] = depth;
+                    }
+                    return 0;
+                });
+            } finally {
+                releaseScratch(scratch);
+            }
+            for (int k = 0; k < count; k++) {
+                ids[from + k] = Arrays.copyOf(ids[from + k], sizes[k]);
+                dists[from + k] = Arrays.copyOf(dists[from + k], sizes[k]);
+            }
+        });
+    }
 
-        String value = cache.getValue(v, w);
-        if (value != null) {
-            return Integer.parseInt(value.split(",")[1]);
+    /**
+     * Bit-parallel BFS (MS-BFS) upwards from up to 64 source sets at once. Each
+     * vertex carries a 64-bit mask per level of the sets that reached it, so a
+     * vertex shared by many sets is dequeued and its edges scanned once per level
+     * instead of once per set
+     * @param scratch scratch buffer owned by the caller; only its bit state is used
+     * @param sources vertex sets; sets from .. from + count - 1 are swept
+     * @param visitor told of every first visit; sets it reports done stop expanding
+     */
+    private void sweep(BfsScratch scratch, int[][] sources, int from, int count, SweepVisitor visitor) {
+        scratch.ensureBitState();
+        long[] seen = scratch.seenBits;
+        long[] current = scratch.frontierBits;
+        long[] next = scratch.nextBits;
+        int[] frontier = scratch.frontier;
+        int[] nextFrontier = scratch.nextFrontier;
+        int[] touched = scratch.touched;
+        int frontierSize = 0;
+        int touchedSize = 0;
+        for (int set = 0; set < count; set++) {
+            long bit = 1L << set;
+            for (int source: sources[from + set]) {
+                if ((seen[source] & bit) != 0) continue;
+                if (seen[source] == 0) touched[touchedSize++] = source;
+                if (current[source] == 0) frontier[frontierSize++] = source;
+                seen[source] |= bit;
+                current[source] |= bit;
+            }
         }
-        resetQueryState();
-        Queue<Integer> vQueue = new Queue<>();
-        Queue<Integer> wQueue = new Queue<>();
 
-        for (int vNode: v) {
-            vQueue.enqueue(vNode);
-            distFromV[vNode] = 0;
-            vEntriesChanged.add(vNode);
+        long all = count == SWEEP_WIDTH ? -1L : (1L << count) - 1;
+        long done = 0;
+        for (int i = 0; i < frontierSize; i++) {
+            done |= visitor.visit(frontier[i], current[frontier[i]], 0);
         }
-        for (int wNode: w) {
-            wQueue.enqueue(wNode);
-            distFromW[wNode] = 0;
-            wEntriesChanged.add(wNode);
+        int depth = 0;
+        while (frontierSize > 0 && done != all) {
+            int nextSize = 0;
+            for (int i = 0; i < frontierSize; i++) {
+                int vertex = frontier[i];
+                long sets = current[vertex] & ~done;
+                current[vertex] = 0;
+                if (sets == 0) continue;
+                for (int e = offsets[vertex]; e < offsets[vertex + 1]; e++) {
+                    int neighbor = targets[e];
+                    long fresh = sets & ~seen[neighbor];
+                    if (fresh == 0) continue;
+                    if (seen[neighbor] == 0) touched[touchedSize++] = neighbor;
+                    if (next[neighbor] == 0) nextFrontier[nextSize++] = neighbor;
+                    seen[neighbor] |= fresh;
+                    next[neighbor] |= fresh;
+                }
+            }
+            depth++;
+            for (int i = 0; i < nextSize; i++) {
+                done |= visitor.visit(nextFrontier[i], next[nextFrontier[i]], depth);
+            }
+            long[] swapBits = current;
+            current = next;
+            next = swapBits;
+            int[] swapFrontier = frontier;
+            frontier = nextFrontier;
+            nextFrontier = swapFrontier;
+            frontierSize = nextSize;
         }
 
-        runAlternatingBreadthFirstSearch(vQueue, wQueue);
-        if (this.shortestCommonLength != Integer.MAX_VALUE) {
-            cache.setValue(v, w, this.shortestCommonAncestor, shortestCommonLength);
-            return shortestCommonLength;
+        // leave every bit array zeroed for the next sweep
+        for (int i = 0; i < frontierSize; i++) {
+            current[frontier[i]] = 0;
+        }
+        for (int i = 0; i < touchedSize; i++) {
+            seen[touched[i]] = 0;
         }
-        return -1;
+        verticesVisited.add(touchedSize);
     }
 
-    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-        validateVertices(v);
-        validateVertices(w);
+    private static int[] toArray(Iterable<Integer> vertices) {
+        if (vertices == null) throw new IllegalArgumentException("vertices cannot be null");
+        int count = 0;
+        for (Integer vertex: vertices) {
+            if (vertex == null) throw new IllegalArgumentException("vertex cannot be null");
+            count++;
+        }
+        int[] array = new int[count];
+        count = 0;
+        for (int vertex: vertices) array[count++] = vertex;
+        return array;
+    }
+
+    private static int[][] toArrays(List<? extends Iterable<Integer>> vertexSets) {
+        int[][] arrays = new int[vertexSets.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = toArray(vertexSets.get(i));
+        }
+        return arrays;
+    }
+
+    /**
+     * Labels every ancestor of the sources on the v side of scratch; on return
+     * vQueue[0, vTail) lists them and distFromV holds their distances
+     */
+    private void collectAncestors(BfsScratch scratch, int[] sources) {
+        resetQueryState(scratch);
+        for (int source: sources) {
+            if (scratch.distFromV[source] != -1) continue;
+            scratch.distFromV[source] = 0;
+            scratch.edgeToV[source] = -1;
+            scratch.vQueue[scratch.vTail++] = source;
+        }
+        for (int head = 0; head < scratch.vTail; head++) {
+            int vertex = scratch.vQueue[head];
+            for (int e = offsets[vertex]; e < offsets[vertex + 1]; e++) {
+                int neighbor = targets[e];
+                if (scratch.distFromV[neighbor] != -1) continue;
+                scratch.distFromV[neighbor] = scratch.distFromV[vertex] + 1;
+                scratch.edgeToV[neighbor] = vertex;
+                scratch.vQueue[scratch.vTail++] = neighbor;
+            }
+        }
+        verticesVisited.add(scratch.vTail);
+    }
+
+    /**
+     * Whether w can be reached from v by following edges, e.g. whether w is a
+     * hypernym of v. Answered by the reachability index, built on first use, or
+     * by a BFS up from v if the digraph has a cycle
+     * @return true if w is v or reachable from v
+     */
+    public boolean reachable(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        ReachabilityIndex index = reachabilityIndex();
+        if (index != null) return index.reachable(v, w);
+        BfsScratch scratch = borrowScratch();
+        try {
+            collectAncestors(scratch, new int[] { v });
+            boolean reached = scratch.distFromV[w] != -1;
+            resetQueryState(scratch);
+            return reached;
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+
+    /**
+     * @return the reachability index over this SAP's digraph, built on first
+     * call, or null if the digraph has a cycle
+     */
+    public ReachabilityIndex reachabilityIndex() {
+        if (!reachabilityBuilt) {
+            synchronized (this) {
+                if (!reachabilityBuilt) {
+                    reachability = ReachabilityIndex.build(digraph);
+                    reachabilityBuilt = true;
+                }
+            }
+        }
+        return reachability;
+    }
+
+    /**
+     * Visits the vertices by increasing length of their shortest ancestral path
+     * to the sources: up from the sources to every ancestor a, then down the
+     * reversed edges from a, so vertex x is reached at min over a of
+     * dist(sources, a) + dist(x, a). A min-heap of length << 32 | vertex orders
+     * the downward expansion, so only vertices up to the last visited length are
+     * ever labelled
+     * @param sources source vertices
+     * @param maxLength vertices farther than this are not visited
+     * @param visitor called once per vertex, the sources themselves first
+     */
+    void neighbors(int[] sources, int maxLength, NeighborVisitor visitor) {
+        for (int source: sources) validateVertex(source);
+        CsrDigraph down = reverseDigraph();
+        int[] downOffsets = down.offsets();
+        int[] downTargets = down.targets();
+        BfsScratch scratch = borrowScratch();
+        try {
+            collectAncestors(scratch, sources);
+            for (int i = 0; i < scratch.vTail; i++) {
+                int ancestor = scratch.vQueue[i];
+                int length = scratch.distFromV[ancestor];
+                // ancestors are in BFS order, so all later ones are farther
+                if (length > maxLength) break;
+                scratch.push((long) length << 32 | ancestor);
+            }
+            while (scratch.heapSize > 0) {
+                long entry = scratch.pop();
+                int vertex = (int) entry;
+                int length = (int) (entry >>> 32);
+                if (scratch.distFromW[vertex] != -1) continue;
+                scratch.distFromW[vertex] = length;
+                scratch.wQueue[scratch.wTail++] = vertex;
+                if (!visitor.visit(vertex, length)) break;
+                if (length == maxLength) continue;
+                for (int e = downOffsets[vertex]; e < downOffsets[vertex + 1]; e++) {
+                    int child = downTargets[e];
+                    if (scratch.distFromW[child] == -1) scratch.push((long) (length + 1) << 32 | child);
+                }
+            }
+            verticesVisited.add(scratch.wTail);
+            scratch.heapSize = 0;
+            resetQueryState(scratch);
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+
+    /**
+     * @return reverse of the digraph, built on first use and then shared
+     */
+    CsrDigraph reverseDigraph() {
+        CsrDigraph down = reverse;
+        if (down == null) {
+            synchronized (this) {
+                down = reverse;
+                if (down == null) {
+                    down = digraph.reverse();
+                    reverse = down;
+                }
+            }
+        }
+        return down;
+    }
+
+    /**
+     * @return reverse of the digraph if it has been built, else null
+     */
+    CsrDigraph builtReverseDigraph() {
+        return reverse;
+    }
+
+    /**
+     * @return total vertices labelled by all BFS runs of this SAP
+     */
+    public long verticesVisited() {
+        return verticesVisited.sum();
+    }
+
+    /**
+     * @return number of queries answered from the result cache
+     */
+    public long cacheHits() {
+        return cache.hits();
+    }
+
+    /**
+     * @return number of queries that had to run a BFS
+     */
+    public long cacheMisses() {
+        return cache.misses();
+    }
+
+    /**
+     * @return number of cached results evicted to make room for new ones
+     */
+    public long cacheEvictions() {
+        return cache.evictions();
+    }
 
-        String value = cache.getValue(v, w);
-        if (value != null) {
-            return Integer.parseInt(value.split(",")[0]);
+    /**
+     * Answers the query whose canonical key is in scratch, from the cache if
+     * possible, otherwise by running the BFS and caching its result
+     * @param scratch scratch buffer owned by the current query, key already set
+     * @return packed (ancestor, length), both -1 if there is no common ancestor
+     */
+    private long lookupOrSearch(BfsScratch scratch) {
+        long hash = scratch.keyHash();
+        scratch.visitedVertices = 0;
+        long value = cache.get(hash, scratch.key, scratch.keyLength);
+        if (value != NO_ENTRY) {
+            QueryMetrics.recordCacheHit();
+            return value;
         }
+        return search(scratch, hash);
+    }
 
-        resetQueryState();
-        Queue<Integer> vQueue = new Queue<>();
-        Queue<Integer> wQueue = new Queue<>();
+    /**
+     * Runs the BFS for the query whose canonical key is in scratch and caches
+     * the result; the BFS trees stay in scratch until it is reset
+     * @param scratch scratch buffer owned by the current query, key already set
+     * @param hash hash of the canonical key
+     * @return packed (ancestor, length), both -1 if there is no common ancestor
+     */
+    private long search(BfsScratch scratch, long hash) {
+        long value;
+        resetQueryState(scratch);
 
-        for (int vNode: v) {
-            vQueue.enqueue(vNode);
-            distFromV[vNode] = 0;
-            vEntriesChanged.add(vNode);
+        int vEnd = 1 + scratch.key[0];
+        for (int i = 1; i < vEnd; i++) {
+            int vNode = scratch.key[i];
+            scratch.distFromV[vNode] = 0;
+            scratch.edgeToV[vNode] = -1;
+            scratch.vQueue[scratch.vTail++] = vNode;
+        }
+        for (int i = vEnd; i < scratch.keyLength; i++) {
+            int wNode = scratch.key[i];
+            scratch.distFromW[wNode] = 0;
+            scratch.edgeToW[wNode] = -1;
+            scratch.wQueue[scratch.wTail++] = wNode;
+            // a vertex in both sets is its own ancestor at length 0
+            if (scratch.distFromV[wNode] == 0 && scratch.shortestCommonLength != 0) {
+                scratch.shortestCommonAncestor = wNode;
+                scratch.shortestCommonLength = 0;
+            }
         }
 
-        for (int wNode: w) {
-            wQueue.enqueue(wNode);
-            distFromW[wNode] = 0;
-            wEntriesChanged.add(wNode);
+        scratch.visitedEdges = 0;
+        runAlternatingBreadthFirstSearch(scratch);
+        scratch.visitedVertices = scratch.vTail + scratch.wTail;
+        verticesVisited.add(scratch.visitedVertices);
+        QueryMetrics.recordSearch(scratch.visitedVertices, scratch.visitedEdges,
+                                  scratch.shortestCommonAncestor != -1 ? scratch.shortestCommonLength : -1);
+        if (scratch.shortestCommonAncestor != -1) {
+            value = pack(scratch.shortestCommonAncestor, scratch.shortestCommonLength);
         }
+        else {
+            value = pack(-1, -1);
+        }
+        cache.put(hash, scratch.key, scratch.keyLength, value);
+        return value;
+    }
+
+    private static long pack(int ancestor, int length) {
+        return ((long) ancestor << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    static int unpackAncestor(long value) {
+        return (int) (value >> 32);
+    }
+
+    static int unpackLength(long value) {
+        return (int) value;
+    }
 
-        runAlternatingBreadthFirstSearch(vQueue, wQueue);
-        if (this.shortestCommonAncestor != -1) {
-            cache.setValue(v, w, this.shortestCommonAncestor, this.shortestCommonLength);
+    /**
+     * Takes an idle scratch buffer from the pool, creating one while fewer than
+     * maxScratch exist, otherwise waits until another query releases one
+     * @return scratch buffer owned by the caller until released
+     */
+    private BfsScratch borrowScratch() {
+        BfsScratch scratch = scratchPool.pollFirst();
+        if (scratch != null) return scratch;
+        while (true) {
+            int created = scratchCreated.get();
+            if (created >= maxScratch) break;
+            if (scratchCreated.compareAndSet(created, created + 1)) {
+                return new BfsScratch(digraph.V());
+            }
+        }
+        try {
+            return scratchPool.takeFirst();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for BFS scratch", e);
         }
-        return this.shortestCommonAncestor;
+    }
+
+    /**
+     * Returns a scratch buffer to the pool; most recently used first so its
+     * arrays are still warm in cache for the next query
+     * @param scratch buffer obtained from borrowScratch
+     */
+    private void releaseScratch(BfsScratch scratch) {
+        scratchPool.offerFirst(scratch);
     }
 
     /**
      *  Resets the modified distance entries from previous query
+     *  @param scratch scratch buffer owned by the current query
      */
-     private void resetQueryState() {
+     private void resetQueryState(BfsScratch scratch) {
          // Reset all V-side distances that were changed
-         for (int vertex: vEntriesChanged) {
-             this.distFromV[vertex] = -1;
+         for (int i = 0; i < scratch.vTail; i++) {
+             scratch.distFromV[scratch.vQueue[i]] = -1;
          }
 
          // Reset all W-side distances that were changed
-         for (int vertex: wEntriesChanged) {
-             this.distFromW[vertex] = -1;
+         for (int i = 0; i < scratch.wTail; i++) {
+             scratch.distFromW[scratch.wQueue[i]] = -1;
          }
 
-         vEntriesChanged = new Bag<>();
-         wEntriesChanged = new Bag<>();
+         scratch.vTail = 0;
+         scratch.wTail = 0;
 
-         this.shortestCommonLength = Integer.MAX_VALUE;
-         this.shortestCommonAncestor = -1;
+         scratch.shortestCommonLength = Integer.MAX_VALUE;
+         scratch.shortestCommonAncestor = -1;
     }
 
     /**
-     * Runs alternating BFS from v nodes and w nodes, finds the
-     * shortest common path distance
-     * @param v Queue containing source v nodes
-     * @param w Queue containing source w nodes
+     * Runs a level-synchronous BFS from the v and w sources, each round expanding
+     * one whole level of whichever side has the smaller frontier. A side stops as
+     * soon as its next level is at least the best length found: every vertex it
+     * could still label would be at least that far from its own sources. Meetings
+     * are detected when the second side labels a vertex, so a vertex on the
+     * shortest ancestral path is always seen before both sides stop.
+     * @param scratch scratch buffer owned by the current query, sources enqueued
      */
-    private void runAlternatingBreadthFirstSearch(Queue<Integer> v, Queue<Integer> w) {
-        // op that was really good with us and with them as well 
-        while (!v.isEmpty() || !w.isEmpty()) {
-            // BFS from source v step
-            if (!v.isEmpty()) {
-                int vertex = v.dequeue();
-                // Check if vertex is common with w BFS
-                if (this.distFromW[vertex] != -1) {
-                    // Calculate the distance
-                    int distance = this.distFromW[vertex] + this.distFromV[vertex];
-                    if (this.shortestCommonLength > distance) {
-                        this.shortestCommonAncestor = vertex;
-                        this.shortestCommonLength = distance;
-                    }
-                }
-                for (int neighbor: this.digraph.adj(vertex)) {
-                    if (this.distFromV[neighbor] == -1) {
-                        this.distFromV[neighbor] = this.distFromV[vertex] + 1;
-                        v.enqueue(neighbor);
-                        vEntriesChanged.add(neighbor);
-                    }
-                }
+    private void runAlternatingBreadthFirstSearch(BfsScratch scratch) {
+        int vHead = 0;
+        int wHead = 0;
+        int vDepth = 0;
+        int wDepth = 0;
+        while (true) {
+            boolean vActive = vHead < scratch.vTail && vDepth + 1 < scratch.shortestCommonLength;
+            boolean wActive = wHead < scratch.wTail && wDepth + 1 < scratch.shortestCommonLength;
+            if (!vActive && !wActive) break;
+            if (vActive && (!wActive || scratch.vTail - vHead <= scratch.wTail - wHead)) {
+                vHead = expandLevel(scratch, vHead, true);
+                vDepth++;
             }
+            else {
+                wHead = expandLevel(scratch, wHead, false);
+                wDepth++;
+            }
+        }
+    }
 
-            // BFS from source w step
-            if (!w.isEmpty()) {
-                int vertex = w.dequeue();
-                // Check if vertex is common with v BFS
-                if (this.distFromV[vertex] != -1) {
-                    int distance = this.distFromV[vertex] + this.distFromW[vertex];
-                    if (this.shortestCommonLength > distance) {
-                        this.shortestCommonAncestor = vertex;
-                        this.shortestCommonLength = distance;
-                    }
-                }
-                for (int neighbor: this.digraph.adj(vertex)) {
-                    if (this.distFromW[neighbor] == -1) {
-                        this.distFromW[neighbor] = this.distFromW[vertex] + 1;
-                        w.enqueue(neighbor);
-                        wEntriesChanged.add(neighbor);
+    /**
+     * Expands every vertex of the current frontier of one side
+     * @param head index of the first frontier vertex in that side's queue
+     * @param vSide whether to expand the v side (otherwise the w side)
+     * @return head of the next level
+     */
+    private int expandLevel(BfsScratch scratch, int head, boolean vSide) {
+        int[] dist = vSide ? scratch.distFromV : scratch.distFromW;
+        int[] otherDist = vSide ? scratch.distFromW : scratch.distFromV;
+        int[] edgeTo = vSide ? scratch.edgeToV : scratch.edgeToW;
+        int[] queue = vSide ? scratch.vQueue : scratch.wQueue;
+        int tail = vSide ? scratch.vTail : scratch.wTail;
+        int levelEnd = tail;
+        for (int i = head; i < levelEnd; i++) {
+            int vertex = queue[i];
+            if (QueryMetrics.ENABLED) scratch.visitedEdges += offsets[vertex + 1] - offsets[vertex];
+            for (int e = offsets[vertex]; e < offsets[vertex + 1]; e++) {
+                int neighbor = targets[e];
+                if (dist[neighbor] != -1) continue;
+                dist[neighbor] = dist[vertex] + 1;
+                edgeTo[neighbor] = vertex;
+                queue[tail++] = neighbor;
+                // Check if neighbor is common with the other BFS
+                if (otherDist[neighbor] != -1) {
+                    int distance = dist[neighbor] + otherDist[neighbor];
+                    if (scratch.shortestCommonLength > distance) {
+                        scratch.shortestCommonAncestor = neighbor;
+                        scratch.shortestCommonLength = distance;
                     }
                 }
             }
         }
+        if (vSide) scratch.vTail = tail;
+        else scratch.wTail = tail;
+        return levelEnd;
     }
 
     /**
@@ -284,6 +1401,12 @@ public class SAP {
         }
     }
 
+    private void validateVertices(int[] vertices, int from, int to) {
+        for (int i = from; i < to; i++) {
+            validateVertex(vertices[i]);
+        }
+    }
+
     public static void main(String[] args) {
         Digraph g = new Digraph(6);
         g.addEdge(1, 0);
@@ -297,5 +1420,7 @@ public class SAP {
         int ancestor = sap.ancestor(2, 0);
         System.out.println("Length: " + length);
         System.out.println("Ancestor: " + ancestor);
+        SAP.Result result = sap.query(2, 0, true);
+        System.out.println("Query: " + result + ", path " + result.path());
     }
 }
\ No newline at end of file
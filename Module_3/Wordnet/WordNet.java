@@ -1,19 +1,237 @@
-import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.In;
-import edu.princeton.cs.algs4.LinearProbingHashST;
-import edu.princeton.cs.algs4.SET;
-import edu.princeton.cs.algs4.Topological;
-
-import java.util.NoSuchElementException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class WordNet {
-    // maps synset id to nouns (e.g., 0 -> set[hello, hi])
-    private final LinearProbingHashST<Integer, SET<String>> synsetIdToNouns = new LinearProbingHashST<>();
-    // maps noun to synset ids (e.g., hello -> set[0, 1, 5])
-    private final LinearProbingHashST<String, SET<Integer>> nounToSynsetIds = new LinearProbingHashST<>();
+    /**
+     * Shortest ancestral path between two nouns: the ancestor synset and the distance
+     */
+    public static final class Relation {
+        private final String synset;
+        private final int distance;
+
+        private Relation(String synset, int distance) {
+            this.synset = synset;
+            this.distance = distance;
+        }
+
+        /**
+         * @return nouns of the common ancestor synset, as returned by sap
+         */
+        public String synset() {
+            return synset;
+        }
+
+        /**
+         * @return length of the shortest ancestral path, as returned by distance
+         */
+        public int distance() {
+            return distance;
+        }
+
+        @Override
+        public String toString() {
+            return distance + " " + synset;
+        }
+    }
 
-    private final Digraph wordNetGraph;
-    private final SAP sapHelper;
+    /**
+     * A noun found by a neighborhood search and its distance from the query noun
+     */
+    public static final class Neighbor {
+        private final String noun;
+        private final int distance;
+
+        private Neighbor(String noun, int distance) {
+            this.noun = noun;
+            this.distance = distance;
+        }
+
+        public String noun() {
+            return noun;
+        }
+
+        /**
+         * @return length of the shortest ancestral path, as returned by distance
+         */
+        public int distance() {
+            return distance;
+        }
+
+        @Override
+        public String toString() {
+            return distance + " " + noun;
+        }
+    }
+
+    // open-addressed set of noun ids, grown with the neighborhood rather than
+    // sized to the dictionary
+    private static final class NounIdSet {
+        // noun id + 1, 0 for an empty slot
+        private int[] slots = new int[16];
+        private int size;
+
+        boolean add(int nounId) {
+            if (2 * (size + 1) > slots.length) {
+                int[] old = slots;
+                slots = new int[2 * old.length];
+                for (int entry: old) {
+                    if (entry != 0) insert(entry);
+                }
+            }
+            if (!insert(nounId + 1)) return false;
+            size++;
+            return true;
+        }
+
+        private boolean insert(int entry) {
+            int mask = slots.length - 1;
+            int h = entry * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (slots[slot] != 0) {
+                if (slots[slot] == entry) return false;
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry;
+            return true;
+        }
+    }
+
+    /**
+     * Wall-clock time of each phase of the constructor, in milliseconds
+     */
+    public static final class BuildTimings {
+        private final double synsetsMillis;
+        private final double hypernymsMillis;
+        private final double loadMillis;
+        private final double validateMillis;
+        private final double indexMillis;
+        private final double totalMillis;
+
+        private BuildTimings(double synsetsMillis, double hypernymsMillis, double loadMillis,
+                             double validateMillis, double indexMillis, double totalMillis) {
+            this.synsetsMillis = synsetsMillis;
+            this.hypernymsMillis = hypernymsMillis;
+            this.loadMillis = loadMillis;
+            this.validateMillis = validateMillis;
+            this.indexMillis = indexMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        /**
+         * @return time to parse the synsets file and build the noun tables
+         */
+        public double synsetsMillis() {
+            return synsetsMillis;
+        }
+
+        /**
+         * @return time after the synsets phase to finish the hypernyms file, which
+         * is parsed concurrently with the synsets file when loading in parallel
+         */
+        public double hypernymsMillis() {
+            return hypernymsMillis;
+        }
+
+        /**
+         * @return time to load both files, the two phases above
+         */
+        public double loadMillis() {
+            return loadMillis;
+        }
+
+        /**
+         * @return time of the acyclicity and single root checks
+         */
+        public double validateMillis() {
+            return validateMillis;
+        }
+
+        /**
+         * @return time to set up SAP and, if requested, the ancestor index
+         */
+        public double indexMillis() {
+            return indexMillis;
+        }
+
+        public double totalMillis() {
+            return totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("load %.1f ms (synsets %.1f ms, hypernyms %.1f ms), validate %.1f ms, "
+                                         + "index %.1f ms, total %.1f ms", loadMillis, synsetsMillis,
+                                 hypernymsMillis, validateMillis, indexMillis, totalMillis);
+        }
+    }
+
+    /**
+     * Everything a query reads. Updates never modify a State: they build a new
+     * one and publish it through the volatile state field, so each query works on
+     * one consistent version while updates are applied
+     */
+    private static final class State {
+        // noun <-> dense noun id
+        private final NounDictionary dictionary;
+        // synset ids of noun i are nounSynsets[nounSynsetOffsets[i] .. nounSynsetOffsets[i + 1] - 1]
+        private final int[] nounSynsetOffsets;
+        private final int[] nounSynsets;
+        // noun ids of synset s are synsetNouns[synsetNounOffsets[s] .. synsetNounOffsets[s + 1] - 1]
+        private final int[] synsetNounOffsets;
+        private final int[] synsetNouns;
+        private final CsrDigraph wordNetGraph;
+        private final SAP sapHelper;
+        // null unless requested, or if the closure would exceed its entry budget
+        private final AncestorIndex ancestorIndex;
+        // number of updates applied since construction
+        private final long version;
+
+        private State(NounDictionary dictionary, int[] nounSynsetOffsets, int[] nounSynsets,
+                      int[] synsetNounOffsets, int[] synsetNouns, CsrDigraph wordNetGraph,
+                      SAP sapHelper, AncestorIndex ancestorIndex, long version) {
+            this.dictionary = dictionary;
+            this.nounSynsetOffsets = nounSynsetOffsets;
+            this.nounSynsets = nounSynsets;
+            this.synsetNounOffsets = synsetNounOffsets;
+            this.synsetNouns = synsetNouns;
+            this.wordNetGraph = wordNetGraph;
+            this.sapHelper = sapHelper;
+            this.ancestorIndex = ancestorIndex;
+            this.version = version;
+        }
+
+        // synset ids of the noun, as a fresh array
+        private int[] synsetsOf(int nounId) {
+            return Arrays.copyOfRange(nounSynsets, nounSynsetOffsets[nounId], nounSynsetOffsets[nounId + 1]);
+        }
+    }
+
+    // upper bound on (ancestor, distance) entries of the optional ancestor index
+    private static final long MAX_ANCESTOR_INDEX_ENTRIES = 1L << 26;
+
+    // snapshot file layout, see save
+    private static final int SNAPSHOT_MAGIC = 0x574E5350; // "WNSP"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HAS_ANCESTOR_INDEX = 1;
+
+    private volatile State state;
+    // serializes updates; queries never take it
+    private final Object updateLock = new Object();
+    // null for a wordnet opened from a snapshot
+    private final BuildTimings buildTimings;
 
 
     /**
@@ -22,28 +240,257 @@ public class WordNet {
      * @param hypernyms path to containing hypernyms (format: idA, idB) for synset id idA -> idB
      */
     public WordNet(String synsets, String hypernyms) {
-        try {
+        this(synsets, hypernyms, false);
+    }
 
-        readSynsets(synsets);
-            wordNetGraph = new Digraph(synsetIdToNouns.size());
-        readHypernyms(hypernyms);
-        } catch (NoSuchElementException e) {
-            throw new IllegalArgumentException("invalid input format.");
-        }
-        Topological topological = new Topological(wordNetGraph);
-        if (!topological.hasOrder()) {
+    /**
+     * Creates a wordnet object, optionally precomputing the ancestor closure of
+     * every synset so sap and distance become merge-joins instead of BFS runs
+     * @param synsets path of file containing synsets (format: id, nouns, gloss)
+     * @param hypernyms path to containing hypernyms (format: idA, idB) for synset id idA -> idB
+     * @param buildAncestorIndex whether to build the ancestor index
+     */
+    public WordNet(String synsets, String hypernyms, boolean buildAncestorIndex) {
+        long start = System.nanoTime();
+        boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+        WordNetLoader loader = new WordNetLoader(synsets, hypernyms, parallel);
+        long loaded = System.nanoTime();
+
+        CsrDigraph wordNetGraph = new CsrDigraph(loader.hypernymOffsets(), loader.hypernymTargets());
+        int[] topologicalOrder = wordNetGraph.topologicalOrder(parallel);
+        if (topologicalOrder == null) {
             throw new IllegalArgumentException("Digraph has cycle");
         }
-        int roots = 0;
-        for (int i = 0; i < wordNetGraph.V(); i++) {
-            if (wordNetGraph.outdegree(i) == 0) {
-                roots++;
-                if (roots > 1) {
-                    throw new IllegalArgumentException("Digraph has "+roots+" roots");
-                }
+        int roots = wordNetGraph.sinks(parallel);
+        if (roots > 1) {
+            throw new IllegalArgumentException("Digraph has "+roots+" roots");
+        }
+        long validated = System.nanoTime();
+        SAP sapHelper = new SAP(wordNetGraph, Runtime.getRuntime().availableProcessors());
+        AncestorIndex ancestorIndex = buildAncestorIndex
+                ? AncestorIndex.build(wordNetGraph, topologicalOrder, MAX_ANCESTOR_INDEX_ENTRIES)
+                : null;
+        state = new State(loader.dictionary(), loader.nounSynsetOffsets(), loader.nounSynsets(),
+                          loader.synsetNounOffsets(), loader.synsetNouns(), wordNetGraph, sapHelper,
+                          ancestorIndex, 0);
+        long end = System.nanoTime();
+        buildTimings = new BuildTimings(loader.synsetsMillis(), loader.hypernymsMillis(),
+                                        (loaded - start) / 1e6, (validated - loaded) / 1e6,
+                                        (end - validated) / 1e6, (end - start) / 1e6);
+        QueryMetrics.recordBuild(buildTimings);
+    }
+
+    // creates a wordnet from the tables of a snapshot, checked by open; the
+    // cycle and root checks passed when it was saved
+    private WordNet(String[] nouns, int[] nounSynsetOffsets, int[] nounSynsets,
+                    int[] synsetNounOffsets, int[] synsetNouns, int[] hypernymOffsets,
+                    int[] hypernymTargets, AncestorIndex ancestorIndex) {
+        CsrDigraph wordNetGraph = new CsrDigraph(hypernymOffsets, hypernymTargets);
+        this.state = new State(NounDictionary.of(nouns), nounSynsetOffsets, nounSynsets, synsetNounOffsets,
+                               synsetNouns, wordNetGraph,
+                               new SAP(wordNetGraph, Runtime.getRuntime().availableProcessors()),
+                               ancestorIndex, 0);
+        this.buildTimings = null;
+    }
+
+    /**
+     * Writes a binary snapshot of the current version of this wordnet that open can map back without
+     * parsing or validating the input files again. Little-endian layout:
+     * magic, version, flags, synset count, noun count; then the int tables
+     * nounSynsetOffsets, nounSynsets, synsetNounOffsets, synsetNouns,
+     * hypernymOffsets, hypernymTargets, noun byte offsets, each prefixed by its
+     * length; then the UTF-8 noun bytes padded to 4 bytes; then, if flagged, the
+     * ancestor index offsets, ancestors and distances
+     * @param file destination, replaced atomically once fully written
+     */
+    public void save(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        State current = state;
+        String[] nouns = current.dictionary.nouns();
+        byte[][] nounBytes = new byte[nouns.length][];
+        int[] nounByteOffsets = new int[nouns.length + 1];
+        for (int i = 0; i < nouns.length; i++) {
+            nounBytes[i] = nouns[i].getBytes(StandardCharsets.UTF_8);
+            nounByteOffsets[i + 1] = nounByteOffsets[i] + nounBytes[i].length;
+        }
+        int[][] tables = {
+                current.nounSynsetOffsets, current.nounSynsets, current.synsetNounOffsets,
+                current.synsetNouns, current.wordNetGraph.offsets(), current.wordNetGraph.targets(),
+                nounByteOffsets
+        };
+        AncestorIndex ancestorIndex = current.ancestorIndex;
+        int[][] indexTables = ancestorIndex == null ? new int[0][] : ancestorIndex.tables();
+
+        long size = 5L * 4;
+        for (int[] table: tables) size += 4 + 4L * table.length;
+        size += 4 + ((nounByteOffsets[nouns.length] + 3L) & ~3L);
+        for (int[] table: indexTables) size += 4 + 4L * table.length;
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(SNAPSHOT_MAGIC);
+            out.putInt(SNAPSHOT_VERSION);
+            out.putInt(ancestorIndex == null ? 0 : SNAPSHOT_HAS_ANCESTOR_INDEX);
+            out.putInt(current.wordNetGraph.V());
+            out.putInt(nouns.length);
+            for (int[] table: tables) putTable(out, table);
+            out.putInt(nounByteOffsets[nouns.length]);
+            for (byte[] bytes: nounBytes) out.put(bytes);
+            while ((out.position() & 3) != 0) out.put((byte) 0);
+            for (int[] table: indexTables) putTable(out, table);
+            out.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens a snapshot written by save. The file is memory mapped read-only
+     * while it is read; the int tables are bulk-copied out of the mapping into
+     * the heap and every noun string is decoded, so opening is still linear in
+     * the file size and each process holds its own copy. What it saves over the
+     * constructor is parsing the text files and the cycle and root checks
+     * @param file snapshot written by save
+     * @return wordnet equal to the one that was saved
+     * @throws IllegalArgumentException if the file is not a snapshot of this
+     * version or its tables are inconsistent
+     */
+    public static WordNet open(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalArgumentException(file + " is not a wordnet snapshot");
+            }
+            int version = in.getInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IllegalArgumentException("unsupported snapshot version " + version);
+            }
+            int flags = in.getInt();
+            int synsetCount = in.getInt();
+            int nounCount = in.getInt();
+            if (synsetCount < 0 || nounCount < 0) {
+                throw new IllegalArgumentException("corrupt snapshot " + file);
+            }
+            int[] nounSynsetOffsets = getTable(in);
+            int[] nounSynsets = getTable(in);
+            int[] synsetNounOffsets = getTable(in);
+            int[] synsetNouns = getTable(in);
+            int[] hypernymOffsets = getTable(in);
+            int[] hypernymTargets = getTable(in);
+            int[] nounByteOffsets = getTable(in);
+            if (nounSynsetOffsets.length != nounCount + 1 || synsetNounOffsets.length != synsetCount + 1
+                    || hypernymOffsets.length != synsetCount + 1 || nounByteOffsets.length != nounCount + 1
+                    || !isOffsets(nounSynsetOffsets, nounSynsets.length) || !isBelow(nounSynsets, synsetCount)
+                    || !isOffsets(synsetNounOffsets, synsetNouns.length) || !isBelow(synsetNouns, nounCount)
+                    || !isOffsets(hypernymOffsets, hypernymTargets.length) || !isBelow(hypernymTargets, synsetCount)) {
+                throw new IllegalArgumentException("corrupt snapshot " + file);
+            }
+
+            byte[] nounBytes = new byte[getLength(in, 1)];
+            if (!isOffsets(nounByteOffsets, nounBytes.length)) {
+                throw new IllegalArgumentException("corrupt snapshot " + file);
+            }
+            in.get(nounBytes);
+            in.position((in.position() + 3) & ~3);
+            String[] nouns = new String[nounCount];
+            for (int i = 0; i < nounCount; i++) {
+                nouns[i] = new String(nounBytes, nounByteOffsets[i],
+                                      nounByteOffsets[i + 1] - nounByteOffsets[i],
+                                      StandardCharsets.UTF_8);
             }
+
+            AncestorIndex ancestorIndex = null;
+            if ((flags & SNAPSHOT_HAS_ANCESTOR_INDEX) != 0) {
+                ancestorIndex = AncestorIndex.fromTables(synsetCount, getTable(in), getTable(in), getTable(in));
+            }
+            return new WordNet(nouns, nounSynsetOffsets, nounSynsets, synsetNounOffsets,
+                               synsetNouns, hypernymOffsets, hypernymTargets, ancestorIndex);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated snapshot " + file, e);
+        }
+    }
+
+    private static void putTable(ByteBuffer out, int[] table) {
+        out.putInt(table.length);
+        out.asIntBuffer().put(table);
+        out.position(out.position() + 4 * table.length);
+    }
+
+    private static int[] getTable(ByteBuffer in) {
+        int[] table = new int[getLength(in, 4)];
+        in.asIntBuffer().get(table);
+        in.position(in.position() + 4 * table.length);
+        return table;
+    }
+
+    // length prefix of a table of entries of the given width in bytes
+    private static int getLength(ByteBuffer in, int width) {
+        int length = in.getInt();
+        if (length < 0 || (long) length * width > in.remaining()) {
+            throw new IllegalArgumentException("corrupt table length " + length);
+        }
+        return length;
+    }
+
+    // whether offsets split a table of the given length into consecutive runs
+    private static boolean isOffsets(int[] offsets, int length) {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != length) return false;
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            if (offsets[i] > offsets[i + 1]) return false;
+        }
+        return true;
+    }
+
+    // whether every value is between 0 and bound - 1
+    private static boolean isBelow(int[] values, int bound) {
+        for (int value: values) {
+            if (value < 0 || value >= bound) return false;
         }
-        sapHelper = new SAP(wordNetGraph);
+        return true;
+    }
+
+    /**
+     * @return time spent in each phase of the constructor, or null if this
+     * wordnet was opened from a snapshot
+     */
+    public BuildTimings buildTimings() {
+        return buildTimings;
+    }
+
+    /**
+     * @return the ancestor index, or null if it was not built or an update
+     * has been applied since
+     */
+    public AncestorIndex ancestorIndex() {
+        return state.ancestorIndex;
+    }
+
+    /**
+     * @return number of updates applied since this wordnet was created
+     */
+    public long version() {
+        return state.version;
+    }
+
+    /**
+     * @return number of synsets; synset ids are 0 .. synsetCount() - 1
+     */
+    public int synsetCount() {
+        return state.wordNetGraph.V();
     }
 
     /**
@@ -54,19 +501,49 @@ public class WordNet {
         if (word == null) {
             throw new IllegalArgumentException();
         }
-        return nounToSynsetIds.contains(word);
+        return state.dictionary.id(word) != -1;
     }
 
     /**
      * returns all the nouns
-     * @return SET containing all nouns in Wordnet
+     * @return immutable view of all nouns in Wordnet in sorted order, shared between calls
      */
     public Iterable<String> nouns() {
-        SET<String> allNouns = new SET<>();
-        for (String s: nounToSynsetIds.keys()) {
-            allNouns.add(s);
+        return state.dictionary.sortedNouns();
+    }
+
+    /**
+     * Resolves a noun to its dense id, so repeated queries can skip string hashing
+     * @return id of the noun, between 0 and nounCount() - 1
+     * @throws IllegalArgumentException if noun is null or not in wordnet
+     */
+    public int nounId(String noun) {
+        return nounId(state, noun);
+    }
+
+    private static int nounId(State current, String noun) {
+        if (noun == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        int id = current.dictionary.id(noun);
+        if (id == -1) {
+            throw new IllegalArgumentException("Invalid Argument");
         }
-        return allNouns;
+        return id;
+    }
+
+    /**
+     * @return the noun with the given id
+     */
+    public String noun(int nounId) {
+        return state.dictionary.noun(nounId);
+    }
+
+    /**
+     * @return number of distinct nouns
+     */
+    public int nounCount() {
+        return state.dictionary.size();
     }
 
     /**
@@ -76,71 +553,389 @@ public class WordNet {
      * path
      */
     public String sap(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) {
-            throw new IllegalArgumentException("Invalid argument");
+        long start = QueryMetrics.start();
+        State current = state;
+        String synset = synsetText(current, SAP.unpackAncestor(find(current, nounA, nounB)));
+        QueryMetrics.record(QueryMetrics.Query.ANCESTOR, start);
+        return synset;
+    }
+
+    public int distance(String nounA, String nounB) {
+        long start = QueryMetrics.start();
+        int distance = SAP.unpackLength(find(state, nounA, nounB));
+        QueryMetrics.record(QueryMetrics.Query.DISTANCE, start);
+        return distance;
+    }
+
+    /**
+     * Same as sap on the nouns with the given ids
+     */
+    public String sap(int nounA, int nounB) {
+        long start = QueryMetrics.start();
+        State current = state;
+        String synset = synsetText(current, SAP.unpackAncestor(find(current, nounA, nounB)));
+        QueryMetrics.record(QueryMetrics.Query.ANCESTOR, start);
+        return synset;
+    }
+
+    /**
+     * Same as distance on the nouns with the given ids; allocates nothing
+     */
+    public int distance(int nounA, int nounB) {
+        long start = QueryMetrics.start();
+        int distance = SAP.unpackLength(find(state, nounA, nounB));
+        QueryMetrics.record(QueryMetrics.Query.DISTANCE, start);
+        return distance;
+    }
+
+    /**
+     * finds both the common ancestor and the distance between nounA and nounB
+     * with a single SAP query
+     * @return ancestor synset (same text as sap) and distance (same as distance)
+     */
+    public Relation relate(String nounA, String nounB) {
+        long start = QueryMetrics.start();
+        State current = state;
+        long value = find(current, nounA, nounB);
+        Relation relation = new Relation(synsetText(current, SAP.unpackAncestor(value)), SAP.unpackLength(value));
+        QueryMetrics.record(QueryMetrics.Query.RELATE, start);
+        return relation;
+    }
+
+    // packed (ancestor, length) of the shortest ancestral path between two nouns
+    private static long find(State current, String nounA, String nounB) {
+        return find(current, nounId(current, nounA), nounId(current, nounB));
+    }
+
+    private static long find(State current, int a, int b) {
+        validateNounId(current, a);
+        validateNounId(current, b);
+        int[] offsets = current.nounSynsetOffsets;
+        int[] synsets = current.nounSynsets;
+        if (current.ancestorIndex != null) {
+            return current.ancestorIndex.find(synsets, offsets[a], offsets[a + 1],
+                                              synsets, offsets[b], offsets[b + 1]);
         }
-        SET<Integer> idNounAs = nounToSynsetIds.get(nounA);
-        SET<Integer> idNounBs = nounToSynsetIds.get(nounB);
-        int ancestor = sapHelper.ancestor(idNounAs, idNounBs);
-        SET<String> ancestorSynset = synsetIdToNouns.get(ancestor);
+        return current.sapHelper.find(synsets, offsets[a], offsets[a + 1], synsets, offsets[b], offsets[b + 1]);
+    }
+
+    private static void validateNounId(State current, int nounId) {
+        if (nounId < 0 || nounId >= current.dictionary.size()) {
+            throw new IllegalArgumentException("noun id " + nounId + " is not between 0 and "
+                                               + (current.dictionary.size() - 1));
+        }
+    }
+
+    // nouns of the synset in sorted order, each followed by a space
+    private static String synsetText(State current, int synsetId) {
+        int from = current.synsetNounOffsets[synsetId];
+        int to = current.synsetNounOffsets[synsetId + 1];
+        String[] synset = new String[to - from];
+        for (int i = from; i < to; i++) {
+            synset[i - from] = current.dictionary.noun(current.synsetNouns[i]);
+        }
+        Arrays.sort(synset);
         StringBuilder synsetWords = new StringBuilder();
-        for (String word: ancestorSynset) {
-            synsetWords.append(word+" ");
+        for (int i = 0; i < synset.length; i++) {
+            if (i > 0 && synset[i].equals(synset[i - 1])) continue;
+            synsetWords.append(synset[i]).append(' ');
         }
         return synsetWords.toString();
     }
 
-    public int distance(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) {
-            throw new IllegalArgumentException("Invalid Argument");
+    /**
+     * Determines whether hypernym is a hypernym of hyponym: some synset of
+     * hypernym is a proper ancestor of some synset of hyponym. Answered from the
+     * reachability index, usually without a traversal
+     * @return true if hyponym "is a" hypernym
+     */
+    public boolean isHypernymOf(String hypernym, String hyponym) {
+        State current = state;
+        int a = nounId(current, hypernym);
+        int b = nounId(current, hyponym);
+        int[] offsets = current.nounSynsetOffsets;
+        int[] synsets = current.nounSynsets;
+        for (int i = offsets[a]; i < offsets[a + 1]; i++) {
+            for (int j = offsets[b]; j < offsets[b + 1]; j++) {
+                if (synsets[i] != synsets[j] && current.sapHelper.reachable(synsets[j], synsets[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if synset w is synset v or one of its hypernyms, transitively
+     */
+    public boolean reachable(int v, int w) {
+        return state.sapHelper.reachable(v, w);
+    }
+
+    /**
+     * @return the reachability index of the current version, built on first use
+     */
+    public ReachabilityIndex reachabilityIndex() {
+        return state.sapHelper.reachabilityIndex();
+    }
+
+    /**
+     * computes the distance between every pair of the given nouns, resolving each
+     * noun to its synsets once and sharing one BFS per noun across all its pairs
+     * @param nouns nouns in wordnet
+     * @return symmetric matrix whose entry [i][j] equals distance(nouns[i], nouns[j])
+     */
+    public int[][] distanceMatrix(String[] nouns) {
+        if (nouns == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        State current = state;
+        int[][] synsetIds = new int[nouns.length][];
+        for (int i = 0; i < nouns.length; i++) {
+            synsetIds[i] = current.synsetsOf(nounId(current, nouns[i]));
+        }
+        return current.sapHelper.lengths(synsetIds, nouns.length >= 64);
+    }
+
+    /**
+     * Collects the ancestor synsets of each noun and their distances from it,
+     * for OutcastEngine
+     * @param ids receives the ancestors of nouns[i] in ids[i]
+     * @param dists receives their distances in dists[i]
+     */
+    void closures(String[] nouns, int[][] ids, int[][] dists, boolean parallel) {
+        State current = state;
+        int[][] synsetIds = new int[nouns.length][];
+        for (int i = 0; i < nouns.length; i++) {
+            synsetIds[i] = current.synsetsOf(nounId(current, nouns[i]));
+        }
+        current.sapHelper.closures(synsetIds, ids, dists, parallel);
+    }
+
+    /**
+     * computes the distance from one noun to each of many candidates, with one
+     * bit-parallel sweep per 64 candidates instead of one BFS per pair
+     * @return array whose entry [i] equals distance(noun, candidates[i])
+     */
+    public int[] distances(String noun, String[] candidates) {
+        if (candidates == null) {
+            throw new IllegalArgumentException("Argument is null");
         }
+        State current = state;
+        int[] source = current.synsetsOf(nounId(current, noun));
+        int[][] synsetIds = new int[candidates.length][];
+        for (int i = 0; i < candidates.length; i++) {
+            synsetIds[i] = current.synsetsOf(nounId(current, candidates[i]));
+        }
+        return current.sapHelper.lengths(source, synsetIds, candidates.length >= 64);
+    }
+
+    /**
+     * finds the k nouns closest to noun by distance, searching outwards from its
+     * synsets through their hypernyms and then down through hyponyms, so the
+     * work grows with the neighborhood searched rather than with the number of
+     * nouns. Ties at the k-th distance are broken arbitrarily
+     * @return up to k nouns other than noun, by nondecreasing distance
+     */
+    public List<Neighbor> nearest(String noun, int k) {
+        if (k < 0) throw new IllegalArgumentException("k must be non-negative");
+        return neighbors(state, noun, k, Integer.MAX_VALUE);
+    }
+
+    /**
+     * finds every noun whose distance to noun is at most radius
+     * @return nouns other than noun, by nondecreasing distance
+     */
+    public List<Neighbor> withinDistance(String noun, int radius) {
+        if (radius < 0) throw new IllegalArgumentException("radius must be non-negative");
+        return neighbors(state, noun, Integer.MAX_VALUE, radius);
+    }
 
-        SET<Integer> idNounAs = nounToSynsetIds.get(nounA);
-        SET<Integer> idNounBs = nounToSynsetIds.get(nounB);
-        return sapHelper.length(idNounAs, idNounBs);
+    // synsets are visited by nondecreasing distance, so the first time a noun
+    // is seen is at its distance and the search stops once limit nouns are found
+    private static List<Neighbor> neighbors(State current, String noun, int limit, int radius) {
+        long start = QueryMetrics.start();
+        int query = nounId(current, noun);
+        List<Neighbor> neighbors = new ArrayList<>(Math.min(limit, 64));
+        if (limit == 0) return Collections.unmodifiableList(neighbors);
+        NounIdSet seen = new NounIdSet();
+        seen.add(query);
+        current.sapHelper.neighbors(current.synsetsOf(query), radius, (synset, length) -> {
+            for (int i = current.synsetNounOffsets[synset]; i < current.synsetNounOffsets[synset + 1]; i++) {
+                int nounId = current.synsetNouns[i];
+                if (!seen.add(nounId)) continue;
+                neighbors.add(new Neighbor(current.dictionary.noun(nounId), length));
+                if (neighbors.size() == limit) return false;
+            }
+            return true;
+        });
+        QueryMetrics.record(QueryMetrics.Query.NEAREST, start);
+        return Collections.unmodifiableList(neighbors);
     }
 
-    private void readSynsets(String synsets) {
-        if (synsets == null) {
+    /**
+     * Adds a synset. It must have a hypernym, so wordnet keeps a single root, and
+     * it cannot close a cycle since no edge points to it yet. Cached SAP results
+     * all stay valid: no earlier query involves the new synset. Queries running
+     * concurrently see wordnet either before or after the update
+     * @param synsetNouns nouns of the synset, new or already in wordnet
+     * @param hypernyms ids of the synsets it is a hyponym of
+     * @return id of the new synset, synsetCount() - 1 afterwards
+     * @throws IllegalArgumentException if either array is null or empty, or a
+     * hypernym id is invalid
+     */
+    public int addSynset(String[] synsetNouns, int[] hypernyms) {
+        if (synsetNouns == null || hypernyms == null) {
             throw new IllegalArgumentException("Argument is null");
         }
-        In in = new In(synsets);
-        String line;
-        while (!in.isEmpty()) {
-            line = in.readLine();
-
-            String[] fields = line.split(",");
-
-            int synsetId = Integer.parseInt(fields[0]);
-            SET<String> nounInSynsets = new SET<>();
-            String[] nouns = fields[1].split(" ");
-            for (int i = 0; i < nouns.length; i++) {
-                nounInSynsets.add(nouns[i]);
-                SET<Integer> synsetIdsForNoun;
-                if (!nounToSynsetIds.contains(nouns[i])) {
-                    synsetIdsForNoun = new SET<>();
-                } else {
-                    synsetIdsForNoun = nounToSynsetIds.get(nouns[i]);
+        if (synsetNouns.length == 0) {
+            throw new IllegalArgumentException("synset needs at least one noun");
+        }
+        if (hypernyms.length == 0) {
+            throw new IllegalArgumentException("synset needs a hypernym to keep a single root");
+        }
+        synchronized (updateLock) {
+            State current = state;
+            int synset = current.wordNetGraph.V();
+            int[] targets = Arrays.stream(hypernyms).distinct().toArray();
+            for (int hypernym: targets) {
+                validateSynsetId(current, hypernym);
+            }
+
+            NounDictionary dictionary = current.dictionary.copy();
+            int[] added = new int[synsetNouns.length];
+            int addedCount = 0;
+            for (String noun: synsetNouns) {
+                if (noun == null || noun.isEmpty()) throw new IllegalArgumentException("invalid noun");
+                int id = dictionary.intern(noun);
+                boolean repeated = false;
+                for (int i = 0; i < addedCount && !repeated; i++) repeated = added[i] == id;
+                if (!repeated) added[addedCount++] = id;
+            }
+            added = Arrays.copyOf(added, addedCount);
+
+            // the new synset has the largest id, so appending it keeps every noun's list sorted
+            int nounCount = dictionary.size();
+            boolean[] inSynset = new boolean[nounCount];
+            for (int id: added) inSynset[id] = true;
+            int[] oldOffsets = current.nounSynsetOffsets;
+            int[] nounSynsetOffsets = new int[nounCount + 1];
+            int[] nounSynsets = new int[current.nounSynsets.length + addedCount];
+            int write = 0;
+            for (int noun = 0; noun < nounCount; noun++) {
+                if (noun < oldOffsets.length - 1) {
+                    int length = oldOffsets[noun + 1] - oldOffsets[noun];
+                    System.arraycopy(current.nounSynsets, oldOffsets[noun], nounSynsets, write, length);
+                    write += length;
                 }
-                synsetIdsForNoun.add(synsetId);
-                nounToSynsetIds.put(nouns[i], synsetIdsForNoun);
+                if (inSynset[noun]) nounSynsets[write++] = synset;
+                nounSynsetOffsets[noun + 1] = write;
             }
-            synsetIdToNouns.put(synsetId, nounInSynsets);
+            int[] synsetNounOffsets = Arrays.copyOf(current.synsetNounOffsets, synset + 2);
+            synsetNounOffsets[synset + 1] = synsetNounOffsets[synset] + addedCount;
+            int[] synsetNounIds = Arrays.copyOf(current.synsetNouns, current.synsetNouns.length + addedCount);
+            System.arraycopy(added, 0, synsetNounIds, current.synsetNouns.length, addedCount);
+
+            CsrDigraph wordNetGraph = current.wordNetGraph.withVertex(targets);
+            // the hyponym graph gains the new synset under each of its hypernyms
+            CsrDigraph hyponyms = current.sapHelper.builtReverseDigraph();
+            if (hyponyms != null) {
+                hyponyms = hyponyms.withVertex(new int[0]);
+                for (int hypernym: targets) hyponyms = hyponyms.withEdge(hypernym, synset);
+            }
+            SAP sapHelper = new SAP(wordNetGraph, Runtime.getRuntime().availableProcessors(),
+                                    current.sapHelper, new boolean[0], hyponyms);
+            state = new State(dictionary, nounSynsetOffsets, nounSynsets, synsetNounOffsets, synsetNounIds,
+                              wordNetGraph, sapHelper, null, current.version + 1);
+            return synset;
         }
     }
 
-    private void readHypernyms(String hypernyms) {
-        if (hypernyms == null) {
-            throw new IllegalArgumentException("Argument is null");
+    /**
+     * Makes hypernym a hypernym of synset. Rejected if hypernym is synset or one of
+     * its hyponyms, found by a search up from hypernym, which would close a cycle;
+     * that also rules out giving the root a hypernym, so wordnet keeps a single
+     * root. Only cached SAP results of queries on synsets that reach synset are
+     * dropped, since no other synset gains an ancestor. Queries running
+     * concurrently see wordnet either before or after the update
+     * @return true if the edge was added, false if it already existed
+     * @throws IllegalArgumentException if an id is invalid or the edge would close a cycle
+     */
+    public boolean addHypernym(int synset, int hypernym) {
+        synchronized (updateLock) {
+            State current = state;
+            validateSynsetId(current, synset);
+            validateSynsetId(current, hypernym);
+            CsrDigraph graph = current.wordNetGraph;
+            int[] offsets = graph.offsets();
+            int[] targets = graph.targets();
+            for (int e = offsets[synset]; e < offsets[synset + 1]; e++) {
+                if (targets[e] == hypernym) return false;
+            }
+            if (reaches(graph, hypernym, synset)) {
+                throw new IllegalArgumentException("hypernym " + hypernym + " of " + synset + " would close a cycle");
+            }
+
+            // the synsets whose ancestors change: synset and everything below it,
+            // found in the hyponym graph of the current SAP, built once per
+            // wordnet and then carried from version to version
+            CsrDigraph hyponyms = current.sapHelper.reverseDigraph();
+            int[] hyponymOffsets = hyponyms.offsets();
+            int[] hyponymTargets = hyponyms.targets();
+            boolean[] stale = new boolean[graph.V()];
+            int[] queue = new int[graph.V()];
+            int tail = 0;
+            stale[synset] = true;
+            queue[tail++] = synset;
+            for (int head = 0; head < tail; head++) {
+                int v = queue[head];
+                for (int e = hyponymOffsets[v]; e < hyponymOffsets[v + 1]; e++) {
+                    int hyponym = hyponymTargets[e];
+                    if (!stale[hyponym]) {
+                        stale[hyponym] = true;
+                        queue[tail++] = hyponym;
+                    }
+                }
+            }
+
+            CsrDigraph wordNetGraph = graph.withEdge(synset, hypernym);
+            SAP sapHelper = new SAP(wordNetGraph, Runtime.getRuntime().availableProcessors(),
+                                    current.sapHelper, stale, hyponyms.withEdge(hypernym, synset));
+            state = new State(current.dictionary, current.nounSynsetOffsets, current.nounSynsets,
+                              current.synsetNounOffsets, current.synsetNouns, wordNetGraph, sapHelper,
+                              null, current.version + 1);
+            return true;
         }
-        In in = new In(hypernyms);
-        String line;
-        while (in.hasNextLine()) {
-            line = in.readLine();
-            String[] splits = line.split(",");
-            int v = Integer.parseInt(splits[0]);
-            for (int i = 1; i < splits.length; i++)
-                wordNetGraph.addEdge(v, Integer.parseInt(splits[i]));
+    }
+
+    // whether target can be reached from source by following hypernym edges
+    private static boolean reaches(CsrDigraph graph, int source, int target) {
+        if (source == target) return true;
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        boolean[] marked = new boolean[graph.V()];
+        int[] stack = new int[graph.V()];
+        int top = 0;
+        marked[source] = true;
+        stack[top++] = source;
+        while (top > 0) {
+            int v = stack[--top];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (w == target) return true;
+                if (!marked[w]) {
+                    marked[w] = true;
+                    stack[top++] = w;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void validateSynsetId(State current, int synsetId) {
+        int synsets = current.wordNetGraph.V();
+        if (synsetId < 0 || synsetId >= synsets) {
+            throw new IllegalArgumentException("synset id " + synsetId + " is not between 0 and " + (synsets - 1));
         }
     }
 
@@ -0,0 +1,155 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection to a WordNetServer, and a load generator for sizing one.
+ *
+ * Usage: java WordNetClient synsets.txt [port] [connections] [seconds] [batch size]
+ * opens the given number of connections, each sending random distance
+ * requests back to back (in frames of batch size requests if above 1) for the
+ * given time, then reports throughput and latency percentiles per frame.
+ */
+public class WordNetClient implements AutoCloseable {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+
+    /**
+     * Connects to a server on localhost
+     */
+    public WordNetClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param request one request line, e.g. "distance cat dog"
+     * @return the response line, starting with OK or ERR
+     */
+    public String request(String request) throws IOException {
+        out.write(request);
+        out.newLine();
+        out.flush();
+        return readResponse();
+    }
+
+    /**
+     * Sends the requests as one batch frame
+     * @return the response lines, in the order of the requests
+     */
+    public List<String> batch(List<String> requests) throws IOException {
+        if (requests.size() > WordNetServer.MAX_BATCH) {
+            throw new IllegalArgumentException("at most " + WordNetServer.MAX_BATCH + " requests per batch");
+        }
+        out.write("batch " + requests.size());
+        out.newLine();
+        for (String request: requests) {
+            out.write(request);
+            out.newLine();
+        }
+        out.flush();
+        List<String> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) responses.add(readResponse());
+        return responses;
+    }
+
+    private String readResponse() throws IOException {
+        String response = in.readLine();
+        if (response == null) throw new IOException("connection closed by server");
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("quit");
+            out.newLine();
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: java WordNetClient synsets.txt [port] [connections] [seconds] [batch size]");
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : WordNetServer.DEFAULT_PORT;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        String[] nouns = readNouns(args[0]);
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder responses = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connections; c++) {
+                long seed = c;
+                executor.execute(() -> {
+                    Random random = new Random(seed);
+                    List<String> frame = new ArrayList<>(batchSize);
+                    try (WordNetClient client = new WordNetClient(port)) {
+                        while (System.nanoTime() < end) {
+                            frame.clear();
+                            for (int i = 0; i < batchSize; i++) {
+                                frame.add("distance " + nouns[random.nextInt(nouns.length)] + ' '
+                                          + nouns[random.nextInt(nouns.length)]);
+                            }
+                            long sent = System.nanoTime();
+                            List<String> answers = batchSize == 1
+                                    ? List.of(client.request(frame.get(0)))
+                                    : client.batch(frame);
+                            latencies.record(System.nanoTime() - sent);
+                            responses.add(answers.size());
+                            for (String answer: answers) {
+                                if (!answer.startsWith("OK")) errors.increment();
+                            }
+                        }
+                    } catch (IOException e) {
+                        System.err.println("connection failed: " + e.getMessage());
+                    }
+                });
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d connections, batch %d: %d requests in %.1f s, %.0f requests/s, %d errors%n",
+                          connections, batchSize, responses.sum(), elapsed, responses.sum() / elapsed,
+                          errors.sum());
+        System.out.printf("latency per frame: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                          latencies.valueAtPercentile(50) / 1e3, latencies.valueAtPercentile(99) / 1e3,
+                          latencies.valueAtPercentile(99.9) / 1e3, latencies.max() / 1e3);
+    }
+
+    // nouns of the synsets file, format: id,noun noun ...,gloss
+    private static String[] readNouns(String synsets) throws IOException {
+        List<String> nouns = new ArrayList<>();
+        for (String line: Files.readAllLines(Paths.get(synsets), StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",", 3);
+            if (fields.length < 2) continue;
+            for (String noun: fields[1].split(" ")) {
+                if (!noun.isEmpty()) nouns.add(noun);
+            }
+        }
+        return nouns.toArray(new String[0]);
+    }
+}
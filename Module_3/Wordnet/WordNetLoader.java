@@ -0,0 +1,464 @@
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Streaming loader for the synsets and hypernyms files. Both files are memory
+ * mapped and parsed straight from their bytes, and the result is kept in flat
+ * int tables instead of per-line sets:
+ * - nouns: distinct nouns, indexed by noun id in order of first appearance
+ * - noun -> synset ids and synset -> noun ids as offset + id arrays
+ * - hypernym adjacency in compressed sparse row (CSR) form
+ */
+public class WordNetLoader {
+    private static final byte COMMA = ',';
+    private static final byte SPACE = ' ';
+    private static final byte NEWLINE = '\n';
+    private static final byte RETURN = '\r';
+
+    private final int synsetCount;
+    private final NounDictionary dictionary;
+    // synset ids of noun i are nounSynsets[nounSynsetOffsets[i] .. nounSynsetOffsets[i + 1] - 1]
+    private final int[] nounSynsetOffsets;
+    private final int[] nounSynsets;
+    // noun ids of synset s are synsetNouns[synsetNounOffsets[s] .. synsetNounOffsets[s + 1] - 1]
+    private final int[] synsetNounOffsets;
+    private final int[] synsetNouns;
+    // hypernyms of synset s are hypernymTargets[hypernymOffsets[s] .. hypernymOffsets[s + 1] - 1]
+    private final int[] hypernymOffsets;
+    private final int[] hypernymTargets;
+    private final long synsetsNanos;
+    private final long hypernymsNanos;
+    private final long loadNanos;
+
+    /**
+     * Loads both files, in parallel when more than one processor is available
+     * @param synsets path of file containing synsets (format: id, nouns, gloss)
+     * @param hypernyms path to containing hypernyms (format: idA, idB) for synset id idA -> idB
+     * @throws IllegalArgumentException if a file is missing or malformed
+     */
+    public WordNetLoader(String synsets, String hypernyms) {
+        this(synsets, hypernyms, Runtime.getRuntime().availableProcessors() > 1);
+    }
+
+    /**
+     * Loads both files. In parallel, the hypernyms file is parsed on the common
+     * fork-join pool while the synsets file is split at line boundaries into
+     * chunks parsed concurrently; the chunk results are then merged in file
+     * order, so noun ids and edge order are the same as in a sequential load
+     * @param synsets path of file containing synsets (format: id, nouns, gloss)
+     * @param hypernyms path to containing hypernyms (format: idA, idB) for synset id idA -> idB
+     * @param parallel whether to parse in parallel
+     * @throws IllegalArgumentException if a file is missing or malformed
+     */
+    public WordNetLoader(String synsets, String hypernyms, boolean parallel) {
+        if (synsets == null || hypernyms == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        long start = System.nanoTime();
+        MappedByteBuffer synsetBytes = map(synsets);
+        MappedByteBuffer hypernymBytes = map(hypernyms);
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        CompletableFuture<HypernymChunk[]> hypernymChunks = null;
+        if (parallel) {
+            int hypernymChunkCount = chunkCount(hypernymBytes, processors);
+            hypernymChunks = CompletableFuture.supplyAsync(
+                    () -> parseChunks(hypernymBytes, hypernymChunkCount, true, HypernymChunk[]::new,
+                                      (from, to) -> parseHypernyms(hypernyms, hypernymBytes, from, to)));
+        }
+
+        SynsetChunk[] chunks = parseChunks(synsetBytes, parallel ? chunkCount(synsetBytes, processors) : 1,
+                                           parallel, SynsetChunk[]::new,
+                                           (from, to) -> parseSynsets(synsets, synsetBytes, from, to));
+        // (noun id, synset id) pairs in file order, with chunk-local noun ids
+        // mapped to ids in order of first appearance in the whole file
+        int pairCount = 0;
+        int expectedNouns = 0;
+        int maxSynset = -1;
+        for (SynsetChunk chunk: chunks) {
+            pairCount += chunk.pairNouns.size;
+            expectedNouns += chunk.nouns.size();
+            maxSynset = Math.max(maxSynset, chunk.maxSynset);
+        }
+        IntList pairNouns = new IntList(pairCount);
+        IntList pairSynsets = new IntList(pairCount);
+        NounDictionary ids = new NounDictionary(expectedNouns);
+        for (SynsetChunk chunk: chunks) {
+            int[] globalIds = new int[chunk.nouns.size()];
+            for (int local = 0; local < globalIds.length; local++) {
+                globalIds[local] = ids.intern(chunk.nouns.noun(local));
+            }
+            for (int i = 0; i < chunk.pairNouns.size; i++) {
+                pairNouns.add(globalIds[chunk.pairNouns.items[i]]);
+                pairSynsets.add(chunk.pairSynsets.items[i]);
+            }
+        }
+        synsetCount = maxSynset + 1;
+        dictionary = ids;
+
+        nounSynsetOffsets = new int[dictionary.size() + 1];
+        nounSynsets = groupBy(pairNouns, pairSynsets, dictionary.size(), nounSynsetOffsets, true);
+        synsetNounOffsets = new int[synsetCount + 1];
+        synsetNouns = groupBy(pairSynsets, pairNouns, synsetCount, synsetNounOffsets, false);
+        long parsedSynsets = System.nanoTime();
+        synsetsNanos = parsedSynsets - start;
+
+        HypernymChunk[] edges;
+        if (hypernymChunks == null) {
+            edges = parseChunks(hypernymBytes, 1, false, HypernymChunk[]::new,
+                                (from, to) -> parseHypernyms(hypernyms, hypernymBytes, from, to));
+        }
+        else {
+            try {
+                edges = hypernymChunks.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+
+        hypernymOffsets = new int[synsetCount + 1];
+        int edgeCount = 0;
+        for (HypernymChunk chunk: edges) {
+            if (chunk.maxSynset >= synsetCount) throw malformed(hypernyms, chunk.maxSynsetPosition);
+            for (int i = 0; i < chunk.from.size; i++) {
+                hypernymOffsets[chunk.from.items[i] + 1]++;
+            }
+            edgeCount += chunk.from.size;
+        }
+        for (int v = 0; v < synsetCount; v++) {
+            hypernymOffsets[v + 1] += hypernymOffsets[v];
+        }
+        hypernymTargets = new int[edgeCount];
+        int[] next = Arrays.copyOf(hypernymOffsets, synsetCount);
+        for (HypernymChunk chunk: edges) {
+            for (int i = 0; i < chunk.from.size; i++) {
+                hypernymTargets[next[chunk.from.items[i]]++] = chunk.to.items[i];
+            }
+        }
+        long end = System.nanoTime();
+        // in parallel the hypernyms file is parsed alongside the synsets file, so
+        // only the wait for its parse and the CSR merge count after the synsets phase
+        hypernymsNanos = end - parsedSynsets;
+        loadNanos = end - start;
+    }
+
+    // parses bytes [from, to), which start and end at line boundaries
+    private interface ChunkParser<T> {
+        T parse(int from, int to);
+    }
+
+    // nouns, (local noun id, synset id) pairs and largest synset id of one synsets chunk
+    private static final class SynsetChunk {
+        private final NounDictionary nouns = new NounDictionary(1024);
+        private final IntList pairNouns = new IntList(1024);
+        private final IntList pairSynsets = new IntList(1024);
+        private int maxSynset = -1;
+    }
+
+    // edges of one hypernyms chunk, and its largest synset id and where it appears
+    private static final class HypernymChunk {
+        private final IntList from = new IntList(1024);
+        private final IntList to = new IntList(1024);
+        private int maxSynset = -1;
+        private int maxSynsetPosition;
+    }
+
+    // about one chunk per 256 KB, at most four per processor
+    private static int chunkCount(MappedByteBuffer bytes, int processors) {
+        return Math.max(1, Math.min(4 * processors, bytes.limit() >> 18));
+    }
+
+    /**
+     * Splits the bytes into chunks ending at line boundaries and parses them
+     * @return chunk results in file order
+     */
+    private static <T> T[] parseChunks(MappedByteBuffer bytes, int chunks, boolean parallel,
+                                       IntFunction<T[]> newArray, ChunkParser<T> parser) {
+        int limit = bytes.limit();
+        int[] bounds = new int[chunks + 1];
+        bounds[chunks] = limit;
+        for (int k = 1; k < chunks; k++) {
+            int pos = Math.max(bounds[k - 1], (int) ((long) limit * k / chunks));
+            while (pos < limit && pos > 0 && !isLineEnd(bytes.get(pos - 1))) {
+                pos++;
+            }
+            bounds[k] = pos;
+        }
+        T[] results = newArray.apply(chunks);
+        IntStream range = IntStream.range(0, chunks);
+        if (parallel) range = range.parallel();
+        range.forEach(k -> results[k] = parser.parse(bounds[k], bounds[k + 1]));
+        return results;
+    }
+
+    /**
+     * Parses "id,noun noun ...[,gloss]" lines in bytes [pos, limit)
+     */
+    private static SynsetChunk parseSynsets(String file, MappedByteBuffer bytes, int pos, int limit) {
+        SynsetChunk chunk = new SynsetChunk();
+        byte[] word = new byte[64];
+        while (pos < limit) {
+            if (isLineEnd(bytes.get(pos))) {
+                pos++;
+                continue;
+            }
+            int synsetId = 0;
+            int digits = 0;
+            byte b;
+            while (pos < limit && (b = bytes.get(pos)) != COMMA) {
+                if (b < '0' || b > '9') throw malformed(file, pos);
+                // ids wrapping past Integer.MAX_VALUE would name another synset, and
+                // the synset count of id + 1 must fit an int as well
+                if (synsetId > (Integer.MAX_VALUE - 1 - (b - '0')) / 10) throw malformed(file, pos);
+                synsetId = synsetId * 10 + (b - '0');
+                digits++;
+                pos++;
+            }
+            if (digits == 0 || pos == limit) throw malformed(file, pos);
+            pos++;
+            chunk.maxSynset = Math.max(chunk.maxSynset, synsetId);
+
+            // nouns separated by spaces, up to the comma before the gloss
+            int wordLength = 0;
+            while (true) {
+                b = pos < limit ? bytes.get(pos) : NEWLINE;
+                if (b == SPACE || b == COMMA || isLineEnd(b)) {
+                    if (wordLength > 0) {
+                        String noun = new String(word, 0, wordLength, StandardCharsets.UTF_8);
+                        chunk.pairNouns.add(chunk.nouns.intern(noun));
+                        chunk.pairSynsets.add(synsetId);
+                        wordLength = 0;
+                    }
+                    if (b != SPACE) break;
+                }
+                else {
+                    if (wordLength == word.length) word = Arrays.copyOf(word, word.length * 2);
+                    word[wordLength++] = b;
+                }
+                pos++;
+            }
+            // skip the gloss, if any
+            while (pos < limit && !isLineEnd(bytes.get(pos))) {
+                pos++;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses "v,w1,w2,..." lines in bytes [pos, limit) into v->w edges. Ids are
+     * checked against the synset count once both files are parsed
+     */
+    private static HypernymChunk parseHypernyms(String file, MappedByteBuffer bytes, int pos, int limit) {
+        HypernymChunk chunk = new HypernymChunk();
+        while (pos < limit) {
+            if (isLineEnd(bytes.get(pos))) {
+                pos++;
+                continue;
+            }
+            int v = -1;
+            while (true) {
+                int id = 0;
+                int digits = 0;
+                byte b = 0;
+                while (pos < limit && (b = bytes.get(pos)) >= '0' && b <= '9') {
+                    if (id > (Integer.MAX_VALUE - (b - '0')) / 10) throw malformed(file, pos);
+                    id = id * 10 + (b - '0');
+                    digits++;
+                    pos++;
+                }
+                if (digits == 0) throw malformed(file, pos);
+                if (id > chunk.maxSynset) {
+                    chunk.maxSynset = id;
+                    chunk.maxSynsetPosition = pos;
+                }
+                if (v == -1) {
+                    v = id;
+                }
+                else {
+                    chunk.from.add(v);
+                    chunk.to.add(id);
+                }
+                if (pos == limit || isLineEnd(b)) break;
+                if (b != COMMA) throw malformed(file, pos);
+                pos++;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Counting sort of (key, value) pairs by key
+     * @param offsets receives keyCount + 1 offsets into the returned array
+     * @param distinctSorted whether to sort and deduplicate the values of each key
+     * @return values grouped by key
+     */
+    private static int[] groupBy(IntList keys, IntList values, int keyCount, int[] offsets,
+                                 boolean distinctSorted) {
+        for (int i = 0; i < keys.size; i++) {
+            offsets[keys.items[i] + 1]++;
+        }
+        for (int k = 0; k < keyCount; k++) {
+            offsets[k + 1] += offsets[k];
+        }
+        int[] grouped = new int[keys.size];
+        int[] next = Arrays.copyOf(offsets, keyCount);
+        for (int i = 0; i < keys.size; i++) {
+            grouped[next[keys.items[i]]++] = values.items[i];
+        }
+        if (!distinctSorted) return grouped;
+
+        int write = 0;
+        int start = 0;
+        for (int k = 0; k < keyCount; k++) {
+            int end = offsets[k + 1];
+            Arrays.sort(grouped, start, end);
+            offsets[k] = write;
+            for (int i = start; i < end; i++) {
+                if (i == start || grouped[i] != grouped[i - 1]) grouped[write++] = grouped[i];
+            }
+            start = end;
+        }
+        offsets[keyCount] = write;
+        return write == grouped.length ? grouped : Arrays.copyOf(grouped, write);
+    }
+
+    private static MappedByteBuffer map(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot read " + file, e);
+        }
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == NEWLINE || b == RETURN;
+    }
+
+    private static IllegalArgumentException malformed(String file, int position) {
+        return new IllegalArgumentException("invalid input format in " + file + " at byte " + position);
+    }
+
+    public int synsetCount() {
+        return synsetCount;
+    }
+
+    public int edgeCount() {
+        return hypernymTargets.length;
+    }
+
+    NounDictionary dictionary() {
+        return dictionary;
+    }
+
+    int[] nounSynsetOffsets() {
+        return nounSynsetOffsets;
+    }
+
+    int[] nounSynsets() {
+        return nounSynsets;
+    }
+
+    int[] synsetNounOffsets() {
+        return synsetNounOffsets;
+    }
+
+    int[] synsetNouns() {
+        return synsetNouns;
+    }
+
+    int[] hypernymOffsets() {
+        return hypernymOffsets;
+    }
+
+    int[] hypernymTargets() {
+        return hypernymTargets;
+    }
+
+    /**
+     * @return time spent parsing the synsets file and building the noun tables, in milliseconds
+     */
+    public double synsetsMillis() {
+        return synsetsNanos / 1e6;
+    }
+
+    /**
+     * @return time spent after the synsets phase to finish parsing the hypernyms
+     * file and build its CSR form, in milliseconds; near the merge time alone when
+     * the two files were parsed in parallel
+     */
+    public double hypernymsMillis() {
+        return hypernymsNanos / 1e6;
+    }
+
+    /**
+     * @return wall-clock time of the whole load, in milliseconds
+     */
+    public double loadMillis() {
+        return loadNanos / 1e6;
+    }
+
+    /**
+     * @return approximate heap bytes retained by the loaded tables, strings included
+     */
+    public long tableBytes() {
+        long bytes = 4L * (nounSynsetOffsets.length + nounSynsets.length + synsetNounOffsets.length
+                + synsetNouns.length + hypernymOffsets.length + hypernymTargets.length);
+        return bytes + dictionary.memoryBytes();
+    }
+
+    // growable int array
+    private static final class IntList {
+        private int[] items;
+        private int size;
+
+        IntList(int capacity) {
+            items = new int[Math.max(16, capacity)];
+        }
+
+        void add(int item) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+    }
+
+    /**
+     * Times this loader, sequential and parallel, and reports the size of the
+     * tables it builds
+     * @param args synsets file, hypernyms file
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("usage: WordNetLoader synsets.txt hypernyms.txt");
+            return;
+        }
+        // the first round only warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            new WordNetLoader(args[0], args[1], false);
+            long sequentialNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            WordNetLoader parallel = new WordNetLoader(args[0], args[1], true);
+            long parallelNanos = System.nanoTime() - start;
+            if (round == 0) continue;
+            System.out.printf("loader: %.1f ms sequential%n", sequentialNanos / 1e6);
+            System.out.printf("parallel loader: %.1f ms (synsets %.1f ms, then hypernyms %.1f ms), "
+                                      + "tables ~%d KB, %d synsets, %d edges, %d nouns%n",
+                              parallelNanos / 1e6, parallel.synsetsMillis(), parallel.hypernymsMillis(),
+                              parallel.tableBytes() / 1024, parallel.synsetCount(),
+                              parallel.edgeCount(), parallel.dictionary().size());
+        }
+    }
+}
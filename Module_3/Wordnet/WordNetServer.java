@@ -0,0 +1,246 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves one shared WordNet to other processes on localhost, so each of them
+ * does not have to load its own copy. The protocol is line based, UTF-8:
+ *
+ *   isNoun noun               OK true | OK false
+ *   distance nounA nounB      OK 7
+ *   sap nounA nounB           OK nouns of the ancestor synset
+ *   outcast noun noun ...     OK outcast noun
+ *   stats                     OK requests N coalesced M
+ *   batch n                   followed by n request lines, answered by n
+ *                             response lines in the same order
+ *   quit                      closes the connection
+ *
+ * Failures are answered with ERR and a message. Every connection gets its own
+ * virtual thread and the requests of a batch are evaluated concurrently.
+ * Identical requests in flight at the same time are computed once: later
+ * ones wait on the first one's result instead of running their own query.
+ *
+ * Usage: java WordNetServer synsets.txt hypernyms.txt [port]
+ */
+public class WordNetServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7474;
+    // upper bound on the requests of one batch frame
+    static final int MAX_BATCH = 1 << 16;
+
+    private final WordNet wordnet;
+    private final Outcast outcast;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // requests being evaluated, by canonical text
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Binds to the loopback address; call serve to start accepting connections
+     * @param port port to listen on, 0 for any free port
+     */
+    public WordNetServer(WordNet wordnet, int port) throws IOException {
+        if (wordnet == null) throw new IllegalArgumentException("Argument is null");
+        this.wordnet = wordnet;
+        this.outcast = new Outcast(wordnet);
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) return;
+                throw e;
+            }
+            executor.execute(() -> handle(socket));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests answered by another identical request in flight
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                          StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                                                                            StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String request = line.trim();
+                if (request.equals("quit")) break;
+                if (request.split("\\s+", 2)[0].equals("batch")) {
+                    if (!batch(request, in, out)) break;
+                }
+                else {
+                    out.write(answer(request).join());
+                    out.newLine();
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to answer
+        }
+    }
+
+    // reads the n requests of a batch frame and answers them in order
+    private boolean batch(String header, BufferedReader in, BufferedWriter out) throws IOException {
+        int count;
+        try {
+            count = Integer.parseInt(header.substring("batch".length()).trim());
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0 || count > MAX_BATCH) {
+            out.write("ERR batch size must be between 0 and " + MAX_BATCH);
+            out.newLine();
+            return false;
+        }
+        List<CompletableFuture<String>> answers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String line = in.readLine();
+            if (line == null) return false;
+            answers.add(answerAsync(line.trim()));
+        }
+        for (CompletableFuture<String> answer: answers) {
+            out.write(answer.join());
+            out.newLine();
+        }
+        return true;
+    }
+
+    // evaluated on the calling thread unless an identical request is in flight
+    private CompletableFuture<String> answer(String request) {
+        return submit(request, false);
+    }
+
+    // evaluated on a virtual thread of its own
+    private CompletableFuture<String> answerAsync(String request) {
+        return submit(request, true);
+    }
+
+    private CompletableFuture<String> submit(String request, boolean async) {
+        requests.increment();
+        String[] words = request.isEmpty() ? new String[0] : request.split("\\s+");
+        String key = canonical(words);
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        Runnable evaluation = () -> {
+            try {
+                created.complete(evaluate(words));
+            } catch (RuntimeException e) {
+                created.complete("ERR " + e.getMessage());
+            } catch (Throwable e) {
+                // coalesced waiters must be answered even when evaluate fails hard
+                created.complete("ERR " + e);
+                throw e;
+            } finally {
+                inFlight.remove(key, created);
+            }
+        };
+        if (!async) {
+            evaluation.run();
+            return created;
+        }
+        try {
+            executor.execute(evaluation);
+        } catch (RejectedExecutionException e) {
+            created.complete("ERR server is shutting down");
+            inFlight.remove(key, created);
+        }
+        return created;
+    }
+
+    // distance and sap are symmetric, so their arguments are ordered
+    private static String canonical(String[] words) {
+        if (words.length == 3 && (words[0].equals("distance") || words[0].equals("sap"))
+            && words[1].compareTo(words[2]) > 0) {
+            return words[0] + ' ' + words[2] + ' ' + words[1];
+        }
+        return String.join(" ", words);
+    }
+
+    private String evaluate(String[] words) {
+        if (words.length == 0) return "ERR empty request";
+        switch (words[0]) {
+            case "isNoun":
+                if (words.length != 2) return "ERR usage: isNoun noun";
+                return "OK " + wordnet.isNoun(words[1]);
+            case "distance":
+                if (words.length != 3) return "ERR usage: distance nounA nounB";
+                return "OK " + wordnet.distance(words[1], words[2]);
+            case "sap":
+                if (words.length != 3) return "ERR usage: sap nounA nounB";
+                return "OK " + wordnet.sap(words[1], words[2]).trim();
+            case "outcast":
+                if (words.length < 3) return "ERR usage: outcast noun noun ...";
+                return "OK " + outcast.outcast(Arrays.copyOfRange(words, 1, words.length));
+            case "stats":
+                return "OK requests " + requests.sum() + " coalesced " + coalesced.sum();
+            default:
+                return "ERR unknown request " + words[0];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: java WordNetServer synsets.txt hypernyms.txt [port]");
+            return;
+        }
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        try (WordNetServer server = new WordNetServer(wordnet, port)) {
+            System.out.println("loaded " + wordnet.nounCount() + " nouns (" + wordnet.buildTimings()
+                               + "), listening on localhost:" + server.port());
+            server.serve();
+        }
+    }
+}
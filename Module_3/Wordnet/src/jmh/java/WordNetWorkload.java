@@ -0,0 +1,221 @@
+import bench.Workload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The benchmarked operations on the Wordnet classes; see bench.Workload. The
+ * graphs and the two WordNets are built on first use, and every input is drawn
+ * from a fixed seed so that runs are comparable.
+ */
+public class WordNetWorkload implements Workload {
+    private static final int PAIRS = 1 << 16;
+    private static final int WARM_PAIRS = 256;
+
+    private final String hypernyms;
+    private final String synsets;
+    private final Random random = new Random(7);
+    private CsrDigraph graph;
+    private WordNet wordnet;
+    private WordNet indexed;
+    private String[] nouns;
+
+    public WordNetWorkload(String hypernyms, String synsets) throws IOException {
+        if (hypernyms == null || synsets == null) throw new IllegalArgumentException("Argument is null");
+        this.hypernyms = hypernyms;
+        this.synsets = synsets.isEmpty() ? syntheticSynsets(Paths.get(hypernyms)).toString() : synsets;
+    }
+
+    @Override
+    public IntUnaryOperator sapLength(boolean cold, boolean multi) {
+        CsrDigraph G = graph();
+        int pairs = cold ? PAIRS : WARM_PAIRS;
+        SAP[] sap = { null };
+        if (!multi) {
+            int[] v = new int[pairs];
+            int[] w = new int[pairs];
+            for (int i = 0; i < pairs; i++) {
+                v[i] = random.nextInt(G.V());
+                w[i] = random.nextInt(G.V());
+            }
+            return i -> {
+                int k = i & (pairs - 1);
+                if (sap[0] == null || (cold && k == 0)) sap[0] = new SAP(G, 1);
+                return sap[0].length(v[k], w[k]);
+            };
+        }
+        List<List<Integer>> v = new ArrayList<>(pairs);
+        List<List<Integer>> w = new ArrayList<>(pairs);
+        for (int i = 0; i < pairs; i++) {
+            v.add(Arrays.asList(random.nextInt(G.V()), random.nextInt(G.V()), random.nextInt(G.V())));
+            w.add(Arrays.asList(random.nextInt(G.V()), random.nextInt(G.V())));
+        }
+        return i -> {
+            int k = i & (pairs - 1);
+            if (sap[0] == null || (cold && k == 0)) sap[0] = new SAP(G, 1);
+            return sap[0].length(v.get(k), w.get(k));
+        };
+    }
+
+    @Override
+    public IntUnaryOperator distance(boolean zipf, boolean indexed) {
+        WordNet net = wordnet(indexed);
+        String[][] pairs = nounPairs(zipf);
+        return i -> {
+            String[] pair = pairs[i & (PAIRS - 1)];
+            return net.distance(pair[0], pair[1]);
+        };
+    }
+
+    @Override
+    public IntUnaryOperator sap(boolean zipf, boolean indexed) {
+        WordNet net = wordnet(indexed);
+        String[][] pairs = nounPairs(zipf);
+        return i -> {
+            String[] pair = pairs[i & (PAIRS - 1)];
+            return net.sap(pair[0], pair[1]).length();
+        };
+    }
+
+    @Override
+    public IntUnaryOperator nearest(boolean zipf, boolean indexed, int k) {
+        WordNet net = wordnet(indexed);
+        String[][] pairs = nounPairs(zipf);
+        return i -> net.nearest(pairs[i & (PAIRS - 1)][0], k).size();
+    }
+
+    @Override
+    public IntUnaryOperator outcast(int nouns) {
+        Outcast outcast = new Outcast(wordnet(false));
+        String[][] sets = nounSets(256, nouns);
+        return i -> outcast.outcast(sets[i & 255]).length();
+    }
+
+    @Override
+    public IntUnaryOperator top(int nouns, int k) {
+        OutcastEngine engine = new OutcastEngine(wordnet(false));
+        String[][] sets = nounSets(16, nouns);
+        return i -> engine.top(sets[i & 15], k).size();
+    }
+
+    @Override
+    public IntUnaryOperator load(boolean parallel) {
+        return i -> new WordNetLoader(synsets, hypernyms, parallel).edgeCount();
+    }
+
+    @Override
+    public IntUnaryOperator construct() {
+        return i -> new WordNet(synsets, hypernyms).synsetCount();
+    }
+
+    private CsrDigraph graph() {
+        if (graph == null) {
+            WordNetLoader loader = new WordNetLoader(synsets, hypernyms);
+            graph = new CsrDigraph(loader.hypernymOffsets(), loader.hypernymTargets());
+        }
+        return graph;
+    }
+
+    private WordNet wordnet(boolean withIndex) {
+        if (withIndex) {
+            if (indexed == null) indexed = new WordNet(synsets, hypernyms, true);
+            return indexed;
+        }
+        if (wordnet == null) wordnet = new WordNet(synsets, hypernyms);
+        return wordnet;
+    }
+
+    private String[] nouns() {
+        if (nouns == null) {
+            List<String> list = new ArrayList<>();
+            for (String noun: wordnet(false).nouns()) list.add(noun);
+            nouns = list.toArray(new String[0]);
+        }
+        return nouns;
+    }
+
+    private String[][] nounSets(int count, int size) {
+        String[] all = nouns();
+        String[][] sets = new String[count][size];
+        for (String[] set: sets) {
+            for (int j = 0; j < size; j++) {
+                set[j] = all[random.nextInt(all.length)];
+            }
+        }
+        return sets;
+    }
+
+    /**
+     * @param zipf whether to draw nouns from a Zipf(1.1) distribution over a
+     *             shuffled noun order instead of uniformly
+     */
+    private String[][] nounPairs(boolean zipf) {
+        String[] ranked = nouns().clone();
+        double[] cumulative = null;
+        if (zipf) {
+            for (int i = ranked.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                String swap = ranked[i];
+                ranked[i] = ranked[j];
+                ranked[j] = swap;
+            }
+            cumulative = new double[ranked.length];
+            double total = 0;
+            for (int rank = 0; rank < ranked.length; rank++) {
+                total += 1 / Math.pow(rank + 1, 1.1);
+                cumulative[rank] = total;
+            }
+            for (int rank = 0; rank < ranked.length; rank++) {
+                cumulative[rank] /= total;
+            }
+        }
+        String[][] pairs = new String[PAIRS][2];
+        for (String[] pair: pairs) {
+            for (int k = 0; k < 2; k++) {
+                int index;
+                if (zipf) {
+                    index = Arrays.binarySearch(cumulative, random.nextDouble());
+                    if (index < 0) index = Math.min(-index - 1, ranked.length - 1);
+                }
+                else {
+                    index = random.nextInt(ranked.length);
+                }
+                pair[k] = ranked[index];
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Writes a synsets file with one synset per line of the hypernyms file: a
+     * unique noun for every synset, plus a shared noun for one synset in three so
+     * that some nouns map to several synsets
+     */
+    private static Path syntheticSynsets(Path hypernyms) throws IOException {
+        int synsets = 0;
+        try (BufferedReader in = Files.newBufferedReader(hypernyms, StandardCharsets.UTF_8)) {
+            while (in.readLine() != null) synsets++;
+        }
+        Path file = Files.createTempFile("synsets", ".txt");
+        file.toFile().deleteOnExit();
+        Random random = new Random(1);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int id = 0; id < synsets; id++) {
+                out.write(id + ",noun" + id);
+                if (id % 3 == 0) out.write(" shared" + random.nextInt(Math.max(1, synsets / 4)));
+                out.write(",synthetic gloss for synset " + id + "\n");
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the synsets and hypernyms files, sequentially and in parallel, and
+ * building a whole WordNet from them
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark extends WorkloadState {
+    private IntUnaryOperator load;
+    private IntUnaryOperator loadParallel;
+    private IntUnaryOperator construct;
+    private int op;
+
+    @Setup
+    public void setUp() {
+        load = workload().load(false);
+        loadParallel = workload().load(true);
+        construct = workload().construct();
+    }
+
+    @Benchmark
+    public int load() {
+        return load.applyAsInt(op++);
+    }
+
+    @Benchmark
+    public int loadParallel() {
+        return loadParallel.applyAsInt(op++);
+    }
+
+    @Benchmark
+    public int construct() {
+        return construct.applyAsInt(op++);
+    }
+}
@@ -0,0 +1,43 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Outcast of 8 random nouns, and the top 5 outcasts of 300
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutcastBenchmark extends WorkloadState {
+    private IntUnaryOperator outcast;
+    private IntUnaryOperator top;
+    private int op;
+
+    @Setup
+    public void setUp() {
+        outcast = workload().outcast(8);
+        top = workload().top(300, 5);
+    }
+
+    @Benchmark
+    public int outcast() {
+        return outcast.applyAsInt(op++);
+    }
+
+    @Benchmark
+    public int top() {
+        return top.applyAsInt(op++);
+    }
+}
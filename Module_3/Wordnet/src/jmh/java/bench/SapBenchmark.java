@@ -0,0 +1,44 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SAP.length on the hypernym graph, with the cache cold or warm and with one
+ * or several vertices on each side
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SapBenchmark extends WorkloadState {
+    @Param({"cold", "warm"})
+    public String cache;
+
+    @Param({"single", "multi"})
+    public String vertices;
+
+    private IntUnaryOperator length;
+    private int op;
+
+    @Setup
+    public void setUp() {
+        length = workload().sapLength(cache.equals("cold"), vertices.equals("multi"));
+    }
+
+    @Benchmark
+    public int length() {
+        return length.applyAsInt(op++);
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Noun queries on WordNet, with uniform or Zipfian noun pairs and with or
+ * without the ancestor index
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordNetBenchmark extends WorkloadState {
+    @Param({"uniform", "zipf"})
+    public String pairs;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private IntUnaryOperator distance;
+    private IntUnaryOperator sap;
+    private IntUnaryOperator nearest;
+    private int op;
+
+    @Setup
+    public void setUp() {
+        boolean zipf = pairs.equals("zipf");
+        distance = workload().distance(zipf, indexed);
+        sap = workload().sap(zipf, indexed);
+        nearest = workload().nearest(zipf, indexed, 10);
+    }
+
+    @Benchmark
+    public int distance() {
+        return distance.applyAsInt(op++);
+    }
+
+    @Benchmark
+    public int sap() {
+        return sap.applyAsInt(op++);
+    }
+
+    @Benchmark
+    public int nearest() {
+        return nearest.applyAsInt(op++);
+    }
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The operations under benchmark. JMH only accepts benchmarks in a named
+ * package, and a named package cannot refer to the Wordnet classes in the
+ * default package, so WordNetWorkload implements this next to them and the
+ * benchmarks reach it through here.
+ *
+ * Every operation takes an iteration counter and returns a value for the
+ * benchmark to hand to JMH, so the work cannot be dropped.
+ */
+public interface Workload {
+    /**
+     * @param cold whether a fresh SAP is started on every pass over 64k distinct
+     *             pairs, so that nearly every query misses the cache, instead of
+     *             cycling through 256 pairs on one SAP
+     * @param multi whether to query three sources against two instead of one
+     *              vertex against one
+     */
+    IntUnaryOperator sapLength(boolean cold, boolean multi);
+
+    /**
+     * @param zipf whether nouns are drawn from a Zipf(1.1) distribution instead
+     *             of uniformly
+     * @param indexed whether the WordNet has an ancestor index
+     */
+    IntUnaryOperator distance(boolean zipf, boolean indexed);
+
+    IntUnaryOperator sap(boolean zipf, boolean indexed);
+
+    IntUnaryOperator nearest(boolean zipf, boolean indexed, int k);
+
+    /**
+     * @param nouns size of the candidate sets
+     */
+    IntUnaryOperator outcast(int nouns);
+
+    IntUnaryOperator top(int nouns, int k);
+
+    /**
+     * @param parallel whether the synsets and hypernyms are parsed in parallel
+     */
+    IntUnaryOperator load(boolean parallel);
+
+    IntUnaryOperator construct();
+
+    /**
+     * @param hypernyms hypernyms file
+     * @param synsets synsets file, or empty for a synthetic one generated for
+     *                the hypernyms file
+     */
+    static Workload create(String hypernyms, String synsets) {
+        try {
+            return (Workload) Class.forName("WordNetWorkload")
+                                   .getConstructor(String.class, String.class)
+                                   .newInstance(hypernyms, synsets);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot create WordNetWorkload", e);
+        }
+    }
+}
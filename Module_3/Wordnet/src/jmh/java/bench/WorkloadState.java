@@ -0,0 +1,26 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The input files shared by all benchmarks; pass -p hypernyms=... and
+ * -p synsets=... to run on other data
+ */
+@State(Scope.Thread)
+public abstract class WorkloadState {
+    @Param("data/hypernyms.txt")
+    public String hypernyms;
+
+    // empty for a synthetic synsets file with one synset per hypernyms line
+    @Param("")
+    public String synsets;
+
+    private Workload workload;
+
+    protected Workload workload() {
+        if (workload == null) workload = Workload.create(hypernyms, synsets);
+        return workload;
+    }
+}
@@ -0,0 +1,1270 @@
+import edu.princeton.cs.algs4.DirectedEdge;
+import edu.princeton.cs.algs4.EdgeWeightedDigraph;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction hierarchy over a static WeightedCsrDigraph, for answering many
+ * shortest path queries on the same graph. Vertices are contracted least
+ * important first, by twice the edge difference (shortcuts a contraction
+ * would add minus the arcs it removes) plus the neighbors already contracted
+ * plus the depth of the hierarchy below. A contraction adds a shortcut
+ * u -> x through v unless a witness search finds a path from u to x avoiding
+ * v that is no longer. Every round contracts the vertices that go before all
+ * others within two hops, with the witness searches of the whole round run in
+ * parallel; they also avoid the rest of the round, which is contracted at the
+ * same time. Priorities are updated lazily: contracting a vertex only marks
+ * the edge difference of its neighbors stale, and a stale candidate whose
+ * contraction turns out worse than its neighbors waits for a later round.
+ * Once the remaining vertices are densely connected, contracting them costs
+ * more than it saves, and they stay on top as an uncontracted core.
+ *
+ * Every shortest path then climbs to its most important vertex and descends,
+ * so a query is a bidirectional Dijkstra over upward arcs only (see Query),
+ * and a full tree is an upward search plus one sweep down the hierarchy in
+ * rank order, with no priority queue (see trees). Arcs within the core count
+ * as both upward and downward, so both searches cross the core as plain
+ * Dijkstra. Shortcuts remember the two arcs they replace, so paths unpack
+ * back into the original edges.
+ */
+public final class ContractionHierarchy {
+    private static final int HEAP_ARITY = 4;
+    // witness searches give up after settling this many vertices, adding the
+    // shortcut; the ones estimating a priority give up sooner
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int PRIORITY_SETTLE_LIMIT = 100;
+    // rounds with at least this many vertices run their searches in parallel
+    private static final int PARALLEL_ROUND = 64;
+    // contraction stops once the remaining vertices have this many arcs each
+    // on average, and leaves them as an uncontracted core on top
+    private static final int CORE_DEGREE = 32;
+
+    // file layout, see save
+    private static final int FILE_MAGIC = 0x43485350; // "CHSP"
+    private static final int FILE_VERSION = 2;
+
+    private final WeightedCsrDigraph graph;
+    // order[r] is the vertex of rank r, contracted r-th; rank[order[r]] == r
+    private final int[] order;
+    private final int[] rank;
+    // vertices of rank coreStart and up form the core, left uncontracted;
+    // the arcs between them are both upward and downward
+    private final int coreStart;
+    // upward arcs out of v, to more important vertices
+    private final int[] upOffsets;
+    private final int[] upHeads;
+    private final double[] upWeights;
+    private final int[] upArcs;
+    // upward arcs into v, from more important vertices, for searches towards a target
+    private final int[] downOffsets;
+    private final int[] downTails;
+    private final double[] downWeights;
+    private final int[] downArcs;
+    // arc a is the original edge ~arcFirst[a] if arcFirst[a] < 0, otherwise
+    // the shortcut through arcs arcFirst[a] and arcSecond[a], in travel order
+    private final int[] arcFirst;
+    private final int[] arcSecond;
+
+    private ContractionHierarchy(WeightedCsrDigraph graph, int[] order, int coreStart, int[] upOffsets,
+                                 int[] upHeads, double[] upWeights, int[] upArcs, int[] downOffsets,
+                                 int[] downTails, double[] downWeights, int[] downArcs, int[] arcFirst,
+                                 int[] arcSecond) {
+        this.graph = graph;
+        this.order = order;
+        this.rank = new int[order.length];
+        for (int r = 0; r < order.length; r++) rank[order[r]] = r;
+        this.coreStart = coreStart;
+        this.upOffsets = upOffsets;
+        this.upHeads = upHeads;
+        this.upWeights = upWeights;
+        this.upArcs = upArcs;
+        this.downOffsets = downOffsets;
+        this.downTails = downTails;
+        this.downWeights = downWeights;
+        this.downArcs = downArcs;
+        this.arcFirst = arcFirst;
+        this.arcSecond = arcSecond;
+    }
+
+    /**
+     * Contracts every vertex of graph
+     * @throws IllegalArgumentException if an edge weight is negative
+     */
+    public static ContractionHierarchy build(WeightedCsrDigraph graph) {
+        if (graph == null) throw new IllegalArgumentException("Argument is null");
+        if (graph.hasNegativeWeights()) throw new IllegalArgumentException("graph has negative edge weights");
+        return new Builder(graph).build();
+    }
+
+    public static ContractionHierarchy build(EdgeWeightedDigraph g) {
+        return build(WeightedCsrDigraph.of(g));
+    }
+
+    public WeightedCsrDigraph graph() {
+        return graph;
+    }
+
+    /**
+     * @return position of v in the contraction order, higher is more important;
+     * the core comes last
+     */
+    public int rank(int v) {
+        graph.validateVertex(v);
+        return rank[v];
+    }
+
+    /**
+     * @return number of arcs searched by queries, original edges and shortcuts
+     */
+    public int arcs() {
+        int coreArcs = 0;
+        for (int v = 0; v < graph.V(); v++) {
+            for (int p = downOffsets[v]; p < downOffsets[v + 1]; p++) {
+                if (isCore(downTails[p], v)) coreArcs++;
+            }
+        }
+        return upHeads.length + downTails.length - coreArcs;
+    }
+
+    /**
+     * @return number of shortcuts searched by queries
+     */
+    public int shortcuts() {
+        int shortcuts = 0;
+        for (int arc : upArcs) {
+            if (arcFirst[arc] >= 0) shortcuts++;
+        }
+        // arcs within the core are listed both ways; count them once
+        for (int v = 0; v < graph.V(); v++) {
+            for (int p = downOffsets[v]; p < downOffsets[v + 1]; p++) {
+                if (arcFirst[downArcs[p]] >= 0 && !isCore(downTails[p], v)) shortcuts++;
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * @return number of vertices left uncontracted at the top of the hierarchy
+     */
+    public int coreSize() {
+        return order.length - coreStart;
+    }
+
+    // whether both vertices are in the core
+    private boolean isCore(int v, int w) {
+        return rank[v] >= coreStart && rank[w] >= coreStart;
+    }
+
+    /**
+     * @return a new point-to-point query over this hierarchy, for one thread
+     */
+    public Query newQuery() {
+        return new Query();
+    }
+
+    /**
+     * @return a new tree builder over this hierarchy, for one thread, to plug
+     * into SecondShortestPath and ShortestPathWithSkippableEdge
+     */
+    public ShortestPathBackend trees() {
+        return new Trees();
+    }
+
+    // appends the original edges of arc to path in travel order
+    private void unpack(int arc, List<DirectedEdge> path) {
+        DirectedEdge[] edges = graph.edges();
+        int[] pending = new int[16];
+        int size = 0;
+        pending[size++] = arc;
+        while (size > 0) {
+            int a = pending[--size];
+            if (arcFirst[a] < 0) {
+                path.add(edges[~arcFirst[a]]);
+                continue;
+            }
+            if (size + 2 > pending.length) pending = Arrays.copyOf(pending, 2 * pending.length);
+            pending[size++] = arcSecond[a];
+            pending[size++] = arcFirst[a];
+        }
+    }
+
+    /**
+     * Shortest path between two vertices by bidirectional Dijkstra over upward
+     * arcs: forward from the source, backward from the target. The two meet at
+     * the most important vertex of the path; a side stops once its smallest
+     * key reaches the best meeting found. Arrays are reused across queries
+     * with epoch stamps. Not thread-safe: use one query per thread
+     */
+    public final class Query {
+        private final Side forward = new Side(false);
+        private final Side backward = new Side(true);
+        private int epoch;
+        private double best;
+        private int meeting;
+        private int settled;
+
+        private Query() {
+        }
+
+        /**
+         * @return length of the shortest path from source to target, positive
+         * infinity if there is none
+         */
+        public double distance(int source, int target) {
+            run(source, target);
+            return best;
+        }
+
+        /**
+         * @return the original edges of the shortest path from source to target
+         * in travel order, null if there is none
+         */
+        public Iterable<DirectedEdge> path(int source, int target) {
+            run(source, target);
+            if (meeting == -1) return null;
+            List<Integer> arcs = new ArrayList<>();
+            for (int v = meeting; forward.parentArc[v] != -1; v = forward.parentVertex[v]) {
+                arcs.add(forward.parentArc[v]);
+            }
+            Collections.reverse(arcs);
+            for (int v = meeting; backward.parentArc[v] != -1; v = backward.parentVertex[v]) {
+                arcs.add(backward.parentArc[v]);
+            }
+            List<DirectedEdge> path = new ArrayList<>();
+            for (int arc : arcs) unpack(arc, path);
+            return path;
+        }
+
+        /**
+         * @return vertices settled by both searches of the last query
+         */
+        public int settled() {
+            return settled;
+        }
+
+        private void run(int source, int target) {
+            graph.validateVertex(source);
+            graph.validateVertex(target);
+            if (++epoch == 0) {
+                forward.resetStamps();
+                backward.resetStamps();
+                epoch = 1;
+            }
+            best = Double.POSITIVE_INFINITY;
+            meeting = -1;
+            settled = 0;
+            forward.start(source);
+            backward.start(target);
+            if (source == target) {
+                best = 0.0;
+                meeting = source;
+                return;
+            }
+            while (true) {
+                boolean forwardOpen = !forward.heap.isEmpty() && forward.heap.minKey() < best;
+                boolean backwardOpen = !backward.heap.isEmpty() && backward.heap.minKey() < best;
+                if (!forwardOpen && !backwardOpen) break;
+                if (forwardOpen && (!backwardOpen || forward.heap.minKey() <= backward.heap.minKey()))
+                    forward.settleNext(backward);
+                else backward.settleNext(forward);
+            }
+        }
+
+        private final class Side {
+            private final boolean backwards;
+            private final double[] dist;
+            private final int[] parentArc;
+            private final int[] parentVertex;
+            private final int[] reached;
+            private final IndexedDaryMinHeap heap;
+
+            Side(boolean backwards) {
+                this.backwards = backwards;
+                int V = graph.V();
+                dist = new double[V];
+                parentArc = new int[V];
+                parentVertex = new int[V];
+                reached = new int[V];
+                heap = new IndexedDaryMinHeap(V, HEAP_ARITY);
+            }
+
+            void resetStamps() {
+                Arrays.fill(reached, 0);
+            }
+
+            void start(int root) {
+                heap.clear();
+                reached[root] = epoch;
+                dist[root] = 0.0;
+                parentArc[root] = -1;
+                heap.insert(root, 0.0);
+            }
+
+            private void meet(int v, double length) {
+                if (length < best) {
+                    best = length;
+                    meeting = v;
+                }
+            }
+
+            void settleNext(Side other) {
+                int v = heap.deleteMin();
+                settled++;
+                int[] offsets = backwards ? downOffsets : upOffsets;
+                int[] neighbors = backwards ? downTails : upHeads;
+                double[] weights = backwards ? downWeights : upWeights;
+                int[] arcIds = backwards ? downArcs : upArcs;
+                double d = dist[v];
+                if (other.reached[v] == epoch) meet(v, d + other.dist[v]);
+                for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                    int w = neighbors[p];
+                    double candidate = d + weights[p];
+                    if (reached[w] != epoch) {
+                        reached[w] = epoch;
+                        dist[w] = candidate;
+                        parentArc[w] = arcIds[p];
+                        parentVertex[w] = v;
+                        heap.insert(w, candidate);
+                    }
+                    else if (candidate < dist[w] && heap.contains(w)) {
+                        dist[w] = candidate;
+                        parentArc[w] = arcIds[p];
+                        parentVertex[w] = v;
+                        heap.decreaseKey(w, candidate);
+                    }
+                    else continue;
+                    if (other.reached[w] == epoch) meet(w, candidate + other.dist[w]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Full trees by PHAST: Dijkstra from the root over upward arcs, then one
+     * pass over all vertices from most to least important, pulling each
+     * distance down the arcs from the more important neighbors, which are
+     * final by then
+     */
+    private final class Trees implements ShortestPathBackend {
+        private final IndexedDaryMinHeap heap = new IndexedDaryMinHeap(graph.V(), HEAP_ARITY);
+        private final PhastTree forward = new PhastTree(false);
+        private final PhastTree reverse = new PhastTree(true);
+
+        @Override
+        public WeightedCsrDigraph graph() {
+            return graph;
+        }
+
+        @Override
+        public ShortestPathTree fromSource(int source) {
+            graph.validateVertex(source);
+            forward.run(source, heap);
+            return forward;
+        }
+
+        @Override
+        public ShortestPathTree toTarget(int target) {
+            graph.validateVertex(target);
+            reverse.run(target, heap);
+            return reverse;
+        }
+    }
+
+    /**
+     * Tree over hierarchy arcs, turned into one over original edges after each
+     * run; dist and parents of v are valid if stamp[v] == epoch
+     */
+    private final class PhastTree implements ShortestPathTree {
+        private final boolean reverse;
+        private final double[] dist;
+        private final int[] parentArc;
+        private final int[] parentVertex;
+        // original edge toward the root, valid if attached[v] == epoch
+        private final int[] parentEdge;
+        private final int[] attached;
+        private final int[] stamp;
+        private int[] chain = new int[16];
+        private int[] pending = new int[16];
+        private int[] collected = new int[16];
+        private int epoch;
+        private int root = -1;
+
+        PhastTree(boolean reverse) {
+            this.reverse = reverse;
+            int V = graph.V();
+            dist = new double[V];
+            parentArc = new int[V];
+            parentVertex = new int[V];
+            parentEdge = new int[V];
+            attached = new int[V];
+            stamp = new int[V];
+        }
+
+        void run(int source, IndexedDaryMinHeap heap) {
+            if (++epoch == 0) {
+                Arrays.fill(stamp, 0);
+                Arrays.fill(attached, 0);
+                epoch = 1;
+            }
+            root = source;
+            // a forward tree climbs out of the source and descends into every
+            // vertex; a reverse tree climbs backwards out of the target
+            int[] upOffsets = reverse ? downOffsets : ContractionHierarchy.this.upOffsets;
+            int[] upNeighbors = reverse ? downTails : upHeads;
+            double[] upWeightsOf = reverse ? downWeights : upWeights;
+            int[] upArcIds = reverse ? downArcs : upArcs;
+            heap.clear();
+            stamp[source] = epoch;
+            dist[source] = 0.0;
+            parentArc[source] = -1;
+            heap.insert(source, 0.0);
+            while (!heap.isEmpty()) {
+                double d = heap.minKey();
+                int v = heap.deleteMin();
+                for (int p = upOffsets[v]; p < upOffsets[v + 1]; p++) {
+                    int w = upNeighbors[p];
+                    double candidate = d + upWeightsOf[p];
+                    if (stamp[w] != epoch) {
+                        stamp[w] = epoch;
+                        dist[w] = candidate;
+                        parentArc[w] = upArcIds[p];
+                        parentVertex[w] = v;
+                        heap.insert(w, candidate);
+                    }
+                    else if (candidate < dist[w]) {
+                        dist[w] = candidate;
+                        parentArc[w] = upArcIds[p];
+                        parentVertex[w] = v;
+                        heap.decreaseKey(w, candidate);
+                    }
+                }
+            }
+            // the sweep pulls over the arcs the upward search did not use
+            int[] pullOffsets = reverse ? ContractionHierarchy.this.upOffsets : downOffsets;
+            int[] pullNeighbors = reverse ? upHeads : downTails;
+            double[] pullWeights = reverse ? upWeights : downWeights;
+            int[] pullArcIds = reverse ? upArcs : downArcs;
+            for (int r = order.length - 1; r >= 0; r--) {
+                int v = order[r];
+                for (int p = pullOffsets[v]; p < pullOffsets[v + 1]; p++) {
+                    int u = pullNeighbors[p];
+                    if (stamp[u] != epoch) continue;
+                    double candidate = dist[u] + pullWeights[p];
+                    if (stamp[v] != epoch || candidate < dist[v]) {
+                        stamp[v] = epoch;
+                        dist[v] = candidate;
+                        parentArc[v] = pullArcIds[p];
+                        parentVertex[v] = u;
+                    }
+                }
+            }
+            attached[source] = epoch;
+            parentEdge[source] = -1;
+            for (int v = 0; v < graph.V(); v++) {
+                if (stamp[v] == epoch && attached[v] != epoch) attach(v);
+            }
+        }
+
+        // attaches v and the unattached vertices on its chain of parent arcs,
+        // those closest to the root first
+        private void attach(int v) {
+            int size = 0;
+            for (int u = v; attached[u] != epoch; u = parentVertex[u]) {
+                if (size == chain.length) chain = Arrays.copyOf(chain, 2 * size);
+                chain[size++] = u;
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                if (attached[chain[i]] != epoch) attachArc(parentArc[chain[i]]);
+            }
+        }
+
+        /**
+         * Walks the original edges of arc from its end away from the root
+         * until one leaves an attached vertex, then gives each unattached
+         * vertex on that stretch the edge it was entered by. Taking only
+         * the last edge of each arc is not enough: the vertices inside a
+         * shortcut have parent arcs of their own, and with zero weight edges
+         * following those can lead back into the shortcut
+         */
+        private void attachArc(int arc) {
+            DirectedEdge[] edges = graph.edges();
+            int size = 0;
+            int count = 0;
+            pending[size++] = arc;
+            while (size > 0) {
+                int a = pending[--size];
+                if (arcFirst[a] < 0) {
+                    int id = ~arcFirst[a];
+                    if (count == collected.length) collected = Arrays.copyOf(collected, 2 * count);
+                    collected[count++] = id;
+                    DirectedEdge e = edges[id];
+                    if (attached[reverse ? e.to() : e.from()] == epoch) break;
+                    continue;
+                }
+                if (size + 2 > pending.length) pending = Arrays.copyOf(pending, 2 * pending.length);
+                // forward trees walk the arc backwards, reverse trees in travel order
+                pending[size++] = reverse ? arcSecond[a] : arcFirst[a];
+                pending[size++] = reverse ? arcFirst[a] : arcSecond[a];
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                DirectedEdge e = edges[collected[i]];
+                int w = reverse ? e.from() : e.to();
+                if (attached[w] == epoch) continue;
+                attached[w] = epoch;
+                parentEdge[w] = collected[i];
+            }
+        }
+
+        @Override
+        public int root() {
+            return root;
+        }
+
+        @Override
+        public boolean isReverse() {
+            return reverse;
+        }
+
+        @Override
+        public boolean hasPathTo(int v) {
+            graph.validateVertex(v);
+            return stamp[v] == epoch;
+        }
+
+        @Override
+        public double distTo(int v) {
+            graph.validateVertex(v);
+            return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public int parentEdge(int v) {
+            graph.validateVertex(v);
+            return stamp[v] == epoch ? parentEdge[v] : -1;
+        }
+
+        @Override
+        public Iterable<DirectedEdge> pathTo(int v) {
+            if (!hasPathTo(v)) return null;
+            DirectedEdge[] edges = graph.edges();
+            List<DirectedEdge> path = new ArrayList<>();
+            for (int id = parentEdge[v]; id != -1; ) {
+                DirectedEdge e = edges[id];
+                path.add(e);
+                id = parentEdge[reverse ? e.to() : e.from()];
+            }
+            if (!reverse) Collections.reverse(path);
+            return path;
+        }
+    }
+
+    /**
+     * Contraction state: every arc ever created, original or shortcut, and the
+     * adjacency of the vertices not yet contracted, which lists only arcs
+     * between such vertices
+     */
+    private static final class Builder {
+        private final WeightedCsrDigraph graph;
+        private final int V;
+        private int arcCount;
+        private int[] arcFrom;
+        private int[] arcTo;
+        private double[] arcWeight;
+        private int[] arcFirst;
+        private int[] arcSecond;
+        // arcs replaced by a lighter shortcut, left out of the hierarchy but kept for unpacking
+        private boolean[] dominated;
+        private final int[][] out;
+        private final int[] outSize;
+        private final int[][] in;
+        private final int[] inSize;
+        // rank once contracted, -1 before
+        private final int[] rank;
+        // round in which v is contracted, so witness searches of that round avoid it
+        private final int[] contractedInRound;
+        private final int[] contractedNeighbors;
+        // depth of the hierarchy below v: 1 + the deepest contracted neighbor
+        private final int[] level;
+        // shortcuts minus removed arcs when v was last simulated or contracted;
+        // stale once a neighbor is contracted, and refreshed only when v is next
+        // a candidate
+        private final int[] edgeDifference;
+        private final boolean[] stale;
+        private final int[] priority;
+        private final ConcurrentLinkedDeque<Witness> workspaces = new ConcurrentLinkedDeque<>();
+
+        Builder(WeightedCsrDigraph graph) {
+            this.graph = graph;
+            V = graph.V();
+            int E = graph.E();
+            arcFrom = new int[E];
+            arcTo = new int[E];
+            arcWeight = new double[E];
+            arcFirst = new int[E];
+            arcSecond = new int[E];
+            dominated = new boolean[E];
+            out = new int[V][];
+            outSize = new int[V];
+            in = new int[V][];
+            inSize = new int[V];
+            rank = new int[V];
+            Arrays.fill(rank, -1);
+            contractedInRound = new int[V];
+            contractedNeighbors = new int[V];
+            level = new int[V];
+            edgeDifference = new int[V];
+            stale = new boolean[V];
+            priority = new int[V];
+            int[] offsets = graph.offsets(false);
+            int[] reverseOffsets = graph.offsets(true);
+            for (int v = 0; v < V; v++) {
+                out[v] = new int[Math.max(4, offsets[v + 1] - offsets[v])];
+                in[v] = new int[Math.max(4, reverseOffsets[v + 1] - reverseOffsets[v])];
+            }
+            DirectedEdge[] edges = graph.edges();
+            for (int id = 0; id < E; id++) {
+                DirectedEdge e = edges[id];
+                // a self-loop is never on a shortest path
+                if (e.from() != e.to()) addArc(e.from(), e.to(), e.weight(), ~id, -1);
+            }
+        }
+
+        private void addArc(int from, int to, double weight, int first, int second) {
+            if (arcCount == arcFrom.length) {
+                int capacity = Math.max(16, 2 * arcCount);
+                arcFrom = Arrays.copyOf(arcFrom, capacity);
+                arcTo = Arrays.copyOf(arcTo, capacity);
+                arcWeight = Arrays.copyOf(arcWeight, capacity);
+                arcFirst = Arrays.copyOf(arcFirst, capacity);
+                arcSecond = Arrays.copyOf(arcSecond, capacity);
+                dominated = Arrays.copyOf(dominated, capacity);
+            }
+            int arc = arcCount++;
+            arcFrom[arc] = from;
+            arcTo[arc] = to;
+            arcWeight[arc] = weight;
+            arcFirst[arc] = first;
+            arcSecond[arc] = second;
+            if (outSize[from] == out[from].length) out[from] = Arrays.copyOf(out[from], 2 * outSize[from]);
+            out[from][outSize[from]++] = arc;
+            if (inSize[to] == in[to].length) in[to] = Arrays.copyOf(in[to], 2 * inSize[to]);
+            in[to][inSize[to]++] = arc;
+        }
+
+        // adds the shortcut unless an arc as light joins its ends, retiring heavier ones
+        private void addShortcut(int from, int to, double weight, int first, int second) {
+            for (int k = 0; k < outSize[from]; k++) {
+                int arc = out[from][k];
+                if (arcTo[arc] != to) continue;
+                if (arcWeight[arc] <= weight) return;
+                outSize[from] = remove(out[from], outSize[from], arc);
+                inSize[to] = remove(in[to], inSize[to], arc);
+                dominated[arc] = true;
+                k--;
+            }
+            addArc(from, to, weight, first, second);
+        }
+
+        private static int remove(int[] list, int size, int arc) {
+            for (int i = 0; i < size; i++) {
+                if (list[i] == arc) {
+                    list[i] = list[size - 1];
+                    return size - 1;
+                }
+            }
+            return size;
+        }
+
+        ContractionHierarchy build() {
+            int[] remaining = new int[V];
+            for (int v = 0; v < V; v++) remaining[v] = v;
+            int remainingCount = V;
+            updatePriorities(remaining, remainingCount);
+            int next = 0;
+            int round = 0;
+            while (remainingCount > 0 && !isDenseCore(remaining, remainingCount)) {
+                round++;
+                int[] candidates = independentSet(remaining, remainingCount);
+                for (int v : candidates) contractedInRound[v] = round;
+                Shortcuts[] shortcuts = new Shortcuts[candidates.length];
+                int currentRound = round;
+                IntStream positions = IntStream.range(0, candidates.length);
+                if (candidates.length >= PARALLEL_ROUND) positions = positions.parallel();
+                positions.forEach(i -> {
+                    int v = candidates[i];
+                    Witness witness = workspace();
+                    try {
+                        shortcuts[i] = witness.contract(v, currentRound, true);
+                    } finally {
+                        workspaces.offerFirst(witness);
+                    }
+                    if (stale[v]) {
+                        edgeDifference[v] = shortcuts[i].edgeDifference();
+                        stale[v] = false;
+                        priority[v] = 2 * edgeDifference[v] + contractedNeighbors[v] + level[v];
+                    }
+                });
+                // lazy priority update: a candidate whose fresh priority no longer goes
+                // before its neighbors is left for a later round, its shortcuts dropped
+                boolean[] keep = new boolean[candidates.length];
+                for (int i = 0; i < candidates.length; i++) keep[i] = isLocalMinimum(candidates[i]);
+                for (int i = 0; i < candidates.length; i++) {
+                    if (!keep[i]) continue;
+                    int v = candidates[i];
+                    rank[v] = next++;
+                    for (int k = 0; k < inSize[v]; k++) {
+                        int u = arcFrom[in[v][k]];
+                        outSize[u] = remove(out[u], outSize[u], in[v][k]);
+                        neighborContracted(u, v);
+                    }
+                    for (int k = 0; k < outSize[v]; k++) {
+                        int x = arcTo[out[v][k]];
+                        inSize[x] = remove(in[x], inSize[x], out[v][k]);
+                        neighborContracted(x, v);
+                    }
+                    Shortcuts s = shortcuts[i];
+                    for (int k = 0; k < s.size; k++) {
+                        addShortcut(s.from[k], s.to[k], s.weight[k], s.first[k], s.second[k]);
+                    }
+                }
+                int kept = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    int v = remaining[i];
+                    if (rank[v] == -1) remaining[kept++] = v;
+                }
+                remainingCount = kept;
+            }
+            // the dense core goes on top, in vertex order
+            int coreStart = next;
+            for (int i = 0; i < remainingCount; i++) rank[remaining[i]] = next++;
+            return toHierarchy(coreStart);
+        }
+
+        private boolean isDenseCore(int[] remaining, int count) {
+            long arcs = 0;
+            for (int i = 0; i < count; i++) arcs += outSize[remaining[i]];
+            return count > 1 && arcs >= (long) CORE_DEGREE * count;
+        }
+
+        // the contraction of v removed an arc of u; the cached edge difference of u is now stale
+        private void neighborContracted(int u, int v) {
+            contractedNeighbors[u]++;
+            level[u] = Math.max(level[u], level[v] + 1);
+            stale[u] = true;
+            priority[u] = 2 * edgeDifference[u] + contractedNeighbors[u] + level[u];
+        }
+
+        private Witness workspace() {
+            Witness witness = workspaces.pollFirst();
+            return witness != null ? witness : new Witness();
+        }
+
+        private void updatePriorities(int[] vertices, int count) {
+            IntStream positions = IntStream.range(0, count);
+            if (count >= PARALLEL_ROUND) positions = positions.parallel();
+            positions.forEach(i -> {
+                int v = vertices[i];
+                Witness witness = workspace();
+                try {
+                    edgeDifference[v] = witness.edgeDifference(v);
+                } finally {
+                    workspaces.offerFirst(witness);
+                }
+                priority[v] = 2 * edgeDifference[v] + contractedNeighbors[v] + level[v];
+            });
+        }
+
+        // whether v goes before u: lower priority, ties by vertex
+        private boolean before(int v, int u) {
+            return priority[v] < priority[u] || priority[v] == priority[u] && v < u;
+        }
+
+        // vertices that go before all their remaining neighbors, so no two are adjacent
+        private int[] independentSet(int[] remaining, int count) {
+            IntStream positions = IntStream.range(0, count);
+            if (count >= PARALLEL_ROUND) positions = positions.parallel();
+            return positions.map(i -> remaining[i]).filter(this::isLocalMinimum).toArray();
+        }
+
+        private boolean isLocalMinimum(int v) {
+            for (int k = 0; k < outSize[v]; k++) {
+                int u = arcTo[out[v][k]];
+                if (!before(v, u) || !beforeNeighbors(v, u)) return false;
+            }
+            for (int k = 0; k < inSize[v]; k++) {
+                int u = arcFrom[in[v][k]];
+                if (!before(v, u) || !beforeNeighbors(v, u)) return false;
+            }
+            return true;
+        }
+
+        private boolean beforeNeighbors(int v, int u) {
+            for (int k = 0; k < outSize[u]; k++) {
+                int w = arcTo[out[u][k]];
+                if (w != v && !before(v, w)) return false;
+            }
+            for (int k = 0; k < inSize[u]; k++) {
+                int w = arcFrom[in[u][k]];
+                if (w != v && !before(v, w)) return false;
+            }
+            return true;
+        }
+
+        private ContractionHierarchy toHierarchy(int coreStart) {
+            int[] order = new int[V];
+            for (int v = 0; v < V; v++) order[rank[v]] = v;
+            int[] upOffsets = new int[V + 1];
+            int[] downOffsets = new int[V + 1];
+            for (int a = 0; a < arcCount; a++) {
+                if (dominated[a]) continue;
+                if (isUpward(a, coreStart)) upOffsets[arcFrom[a] + 1]++;
+                if (isDownward(a, coreStart)) downOffsets[arcTo[a] + 1]++;
+            }
+            for (int v = 0; v < V; v++) {
+                upOffsets[v + 1] += upOffsets[v];
+                downOffsets[v + 1] += downOffsets[v];
+            }
+            int[] upHeads = new int[upOffsets[V]];
+            double[] upWeights = new double[upOffsets[V]];
+            int[] upArcs = new int[upOffsets[V]];
+            int[] downTails = new int[downOffsets[V]];
+            double[] downWeights = new double[downOffsets[V]];
+            int[] downArcs = new int[downOffsets[V]];
+            int[] upNext = Arrays.copyOf(upOffsets, V);
+            int[] downNext = Arrays.copyOf(downOffsets, V);
+            for (int a = 0; a < arcCount; a++) {
+                if (dominated[a]) continue;
+                if (isUpward(a, coreStart)) {
+                    int p = upNext[arcFrom[a]]++;
+                    upHeads[p] = arcTo[a];
+                    upWeights[p] = arcWeight[a];
+                    upArcs[p] = a;
+                }
+                if (isDownward(a, coreStart)) {
+                    int p = downNext[arcTo[a]]++;
+                    downTails[p] = arcFrom[a];
+                    downWeights[p] = arcWeight[a];
+                    downArcs[p] = a;
+                }
+            }
+            return new ContractionHierarchy(graph, order, coreStart, upOffsets, upHeads, upWeights, upArcs,
+                                            downOffsets, downTails, downWeights, downArcs,
+                                            Arrays.copyOf(arcFirst, arcCount), Arrays.copyOf(arcSecond, arcCount));
+        }
+
+        // arcs within the core are searched in both directions
+        private boolean isUpward(int a, int coreStart) {
+            return rank[arcFrom[a]] < rank[arcTo[a]] || isCoreArc(a, coreStart);
+        }
+
+        private boolean isDownward(int a, int coreStart) {
+            return rank[arcFrom[a]] > rank[arcTo[a]] || isCoreArc(a, coreStart);
+        }
+
+        private boolean isCoreArc(int a, int coreStart) {
+            return rank[arcFrom[a]] >= coreStart && rank[arcTo[a]] >= coreStart;
+        }
+
+        /**
+         * Shortcuts found by one contraction, as parallel arrays
+         */
+        private static final class Shortcuts {
+            private int size;
+            private int[] from = new int[4];
+            private int[] to = new int[4];
+            private double[] weight = new double[4];
+            private int[] first = new int[4];
+            private int[] second = new int[4];
+            // arcs the contraction removes
+            private int removed;
+
+            int edgeDifference() {
+                return size - removed;
+            }
+
+            void add(int u, int x, double w, int arcIn, int arcOut) {
+                if (size == from.length) {
+                    from = Arrays.copyOf(from, 2 * size);
+                    to = Arrays.copyOf(to, 2 * size);
+                    weight = Arrays.copyOf(weight, 2 * size);
+                    first = Arrays.copyOf(first, 2 * size);
+                    second = Arrays.copyOf(second, 2 * size);
+                }
+                from[size] = u;
+                to[size] = x;
+                weight[size] = w;
+                first[size] = arcIn;
+                second[size] = arcOut;
+                size++;
+            }
+        }
+
+        /**
+         * Per-thread witness search state; all marks are epoch stamps
+         */
+        private final class Witness {
+            private final double[] dist = new double[V];
+            private final int[] reached = new int[V];
+            private final IndexedDaryMinHeap heap = new IndexedDaryMinHeap(V, HEAP_ARITY);
+            private int searchEpoch;
+            // lightest arc from each in-neighbor and to each out-neighbor of the contracted vertex
+            private final double[] inWeight = new double[V];
+            private final int[] inArc = new int[V];
+            private final double[] outWeight = new double[V];
+            private final int[] outArc = new int[V];
+            private final int[] inSeen = new int[V];
+            private final int[] outSeen = new int[V];
+            private int neighborEpoch;
+            private int[] inNeighbors = new int[16];
+            private int[] outNeighbors = new int[16];
+            private int inCount;
+            private int outCount;
+
+            int edgeDifference(int v) {
+                Shortcuts shortcuts = contract(v, 0, false);
+                return shortcuts.size - inCount - outCount;
+            }
+
+            /**
+             * @param round witness paths avoid the vertices contracted in it
+             * @param avoidRound false when only simulating for a priority
+             */
+            Shortcuts contract(int v, int round, boolean avoidRound) {
+                collectNeighbors(v);
+                Shortcuts shortcuts = new Shortcuts();
+                shortcuts.removed = inCount + outCount;
+                double maxOut = 0.0;
+                for (int j = 0; j < outCount; j++) maxOut = Math.max(maxOut, outWeight[outNeighbors[j]]);
+                for (int i = 0; i < inCount; i++) {
+                    int u = inNeighbors[i];
+                    double viaV = inWeight[u];
+                    int targets = outSeen[u] == neighborEpoch ? outCount - 1 : outCount;
+                    search(u, v, viaV + maxOut, targets, round, avoidRound);
+                    for (int j = 0; j < outCount; j++) {
+                        int x = outNeighbors[j];
+                        if (x == u) continue;
+                        double length = viaV + outWeight[x];
+                        if (reached[x] == searchEpoch && dist[x] <= length) continue;
+                        shortcuts.add(u, x, length, inArc[u], outArc[x]);
+                    }
+                }
+                return shortcuts;
+            }
+
+            private void collectNeighbors(int v) {
+                if (++neighborEpoch == 0) {
+                    Arrays.fill(inSeen, 0);
+                    Arrays.fill(outSeen, 0);
+                    neighborEpoch = 1;
+                }
+                inCount = 0;
+                for (int k = 0; k < inSize[v]; k++) {
+                    int arc = in[v][k];
+                    int u = arcFrom[arc];
+                    if (inSeen[u] != neighborEpoch) {
+                        inSeen[u] = neighborEpoch;
+                        inWeight[u] = arcWeight[arc];
+                        inArc[u] = arc;
+                        if (inCount == inNeighbors.length) inNeighbors = Arrays.copyOf(inNeighbors, 2 * inCount);
+                        inNeighbors[inCount++] = u;
+                    }
+                    else if (arcWeight[arc] < inWeight[u]) {
+                        inWeight[u] = arcWeight[arc];
+                        inArc[u] = arc;
+                    }
+                }
+                outCount = 0;
+                for (int k = 0; k < outSize[v]; k++) {
+                    int arc = out[v][k];
+                    int x = arcTo[arc];
+                    if (outSeen[x] != neighborEpoch) {
+                        outSeen[x] = neighborEpoch;
+                        outWeight[x] = arcWeight[arc];
+                        outArc[x] = arc;
+                        if (outCount == outNeighbors.length) outNeighbors = Arrays.copyOf(outNeighbors, 2 * outCount);
+                        outNeighbors[outCount++] = x;
+                    }
+                    else if (arcWeight[arc] < outWeight[x]) {
+                        outWeight[x] = arcWeight[arc];
+                        outArc[x] = arc;
+                    }
+                }
+            }
+
+            // Dijkstra from u around skip, until it settles all targets, the
+            // out-neighbors of skip, or passes maxLength or the settle limit
+            private void search(int u, int skip, double maxLength, int targets, int round, boolean avoidRound) {
+                if (++searchEpoch == 0) {
+                    Arrays.fill(reached, 0);
+                    searchEpoch = 1;
+                }
+                heap.clear();
+                reached[u] = searchEpoch;
+                dist[u] = 0.0;
+                heap.insert(u, 0.0);
+                int settled = 0;
+                while (targets > 0 && !heap.isEmpty() && settled++ < (avoidRound ? WITNESS_SETTLE_LIMIT : PRIORITY_SETTLE_LIMIT)) {
+                    double d = heap.minKey();
+                    if (d > maxLength) break;
+                    int v = heap.deleteMin();
+                    if (v != u && outSeen[v] == neighborEpoch && --targets == 0) break;
+                    for (int k = 0; k < outSize[v]; k++) {
+                        int arc = out[v][k];
+                        int w = arcTo[arc];
+                        if (w == skip || avoidRound && contractedInRound[w] == round) continue;
+                        double candidate = d + arcWeight[arc];
+                        if (reached[w] != searchEpoch) {
+                            reached[w] = searchEpoch;
+                            dist[w] = candidate;
+                            heap.insert(w, candidate);
+                        }
+                        else if (candidate < dist[w] && heap.contains(w)) {
+                            dist[w] = candidate;
+                            heap.decreaseKey(w, candidate);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes this hierarchy in a binary file that open maps back without
+     * contracting again. Little-endian layout: magic, version, vertex count,
+     * edge count, arc count, core start rank, graph fingerprint; then the int
+     * tables order, upOffsets, upHeads, upArcs, downOffsets, downTails,
+     * downArcs, arcFirst, arcSecond and the double tables upWeights,
+     * downWeights, each prefixed by its length
+     * @param file destination, replaced atomically once fully written
+     */
+    public void save(Path file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("Argument is null");
+        int[][] tables = { order, upOffsets, upHeads, upArcs, downOffsets, downTails, downArcs, arcFirst, arcSecond };
+        double[][] weightTables = { upWeights, downWeights };
+        long size = 6L * 4 + 8;
+        for (int[] table : tables) size += 4 + 4L * table.length;
+        for (double[] table : weightTables) size += 4 + 8L * table.length;
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(FILE_MAGIC);
+            out.putInt(FILE_VERSION);
+            out.putInt(graph.V());
+            out.putInt(graph.E());
+            out.putInt(arcFirst.length);
+            out.putInt(coreStart);
+            out.putLong(fingerprint(graph));
+            for (int[] table : tables) putTable(out, table);
+            for (double[] table : weightTables) putTable(out, table);
+            out.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens a hierarchy written by save for the same graph
+     * @throws IllegalArgumentException if the file is not a hierarchy of this
+     * version, was built for another graph or has inconsistent tables
+     */
+    public static ContractionHierarchy open(Path file, WeightedCsrDigraph graph) throws IOException {
+        if (file == null || graph == null) throw new IllegalArgumentException("Argument is null");
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != FILE_MAGIC) throw new IllegalArgumentException(file + " is not a contraction hierarchy");
+            int version = in.getInt();
+            if (version != FILE_VERSION) throw new IllegalArgumentException("unsupported hierarchy version " + version);
+            int V = in.getInt();
+            int E = in.getInt();
+            int arcs = in.getInt();
+            int coreStart = in.getInt();
+            if (V != graph.V() || E != graph.E() || in.getLong() != fingerprint(graph))
+                throw new IllegalArgumentException(file + " was built for another graph");
+            int[] order = getTable(in);
+            int[] upOffsets = getTable(in);
+            int[] upHeads = getTable(in);
+            int[] upArcs = getTable(in);
+            int[] downOffsets = getTable(in);
+            int[] downTails = getTable(in);
+            int[] downArcs = getTable(in);
+            int[] arcFirst = getTable(in);
+            int[] arcSecond = getTable(in);
+            double[] upWeights = getWeightTable(in);
+            double[] downWeights = getWeightTable(in);
+            if (order.length != V || upOffsets.length != V + 1 || downOffsets.length != V + 1
+                    || arcFirst.length != arcs || arcSecond.length != arcs
+                    || upHeads.length != upWeights.length || upHeads.length != upArcs.length
+                    || downTails.length != downWeights.length || downTails.length != downArcs.length
+                    || coreStart < 0 || coreStart > V || !isPermutation(order)) {
+                throw new IllegalArgumentException("corrupt hierarchy " + file);
+            }
+            ContractionHierarchy hierarchy = new ContractionHierarchy(graph, order, coreStart, upOffsets, upHeads,
+                                                                      upWeights, upArcs, downOffsets, downTails,
+                                                                      downWeights, downArcs, arcFirst, arcSecond);
+            if (!hierarchy.isConsistent()) throw new IllegalArgumentException("corrupt hierarchy " + file);
+            return hierarchy;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated hierarchy " + file, e);
+        }
+    }
+
+    private static boolean isPermutation(int[] order) {
+        boolean[] seen = new boolean[order.length];
+        for (int v : order) {
+            if (v < 0 || v >= order.length || seen[v]) return false;
+            seen[v] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Checks tables read from a file before any search trusts them: every
+     * arc is an original edge or joins two earlier arcs end to end, so
+     * unpacking terminates, and each upward arc of v joins v to a more
+     * important vertex with the endpoints its unpacked edges have
+     */
+    private boolean isConsistent() {
+        int V = graph.V();
+        DirectedEdge[] edges = graph.edges();
+        int[] arcFrom = new int[arcFirst.length];
+        int[] arcTo = new int[arcFirst.length];
+        for (int a = 0; a < arcFirst.length; a++) {
+            if (arcFirst[a] < 0) {
+                if (~arcFirst[a] >= edges.length) return false;
+                arcFrom[a] = edges[~arcFirst[a]].from();
+                arcTo[a] = edges[~arcFirst[a]].to();
+            }
+            else {
+                int first = arcFirst[a];
+                int second = arcSecond[a];
+                if (first >= a || second < 0 || second >= a || arcTo[first] != arcFrom[second]) return false;
+                arcFrom[a] = arcFrom[first];
+                arcTo[a] = arcTo[second];
+            }
+        }
+        return isConsistent(upOffsets, upHeads, upWeights, upArcs, arcFrom, arcTo, V)
+            && isConsistent(downOffsets, downTails, downWeights, downArcs, arcTo, arcFrom, V);
+    }
+
+    // arcs of v lead from v (by near) to the more important neighbors[p] (by far)
+    private boolean isConsistent(int[] offsets, int[] neighbors, double[] weights, int[] arcIds,
+                                 int[] near, int[] far, int V) {
+        if (offsets[0] != 0 || offsets[V] != neighbors.length) return false;
+        for (int v = 0; v < V; v++) {
+            if (offsets[v] > offsets[v + 1]) return false;
+            for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                int w = neighbors[p];
+                int arc = arcIds[p];
+                if (w < 0 || w >= V || w == v || rank[w] < rank[v] && !isCore(v, w) || !(weights[p] >= 0)) return false;
+                if (arc < 0 || arc >= arcFirst.length || near[arc] != v || far[arc] != w) return false;
+            }
+        }
+        return true;
+    }
+
+    // hash of the edges, to refuse a hierarchy saved for another graph
+    private static long fingerprint(WeightedCsrDigraph graph) {
+        long hash = graph.V();
+        for (DirectedEdge e : graph.edges()) {
+            hash = hash * 31 + e.from();
+            hash = hash * 31 + e.to();
+            hash = hash * 31 + Double.doubleToLongBits(e.weight());
+        }
+        return hash;
+    }
+
+    private static void putTable(ByteBuffer out, int[] table) {
+        out.putInt(table.length);
+        out.asIntBuffer().put(table);
+        out.position(out.position() + 4 * table.length);
+    }
+
+    private static void putTable(ByteBuffer out, double[] table) {
+        out.putInt(table.length);
+        out.asDoubleBuffer().put(table);
+        out.position(out.position() + 8 * table.length);
+    }
+
+    private static int[] getTable(ByteBuffer in) {
+        int[] table = new int[getLength(in, 4)];
+        in.asIntBuffer().get(table);
+        in.position(in.position() + 4 * table.length);
+        return table;
+    }
+
+    private static double[] getWeightTable(ByteBuffer in) {
+        double[] table = new double[getLength(in, 8)];
+        in.asDoubleBuffer().get(table);
+        in.position(in.position() + 8 * table.length);
+        return table;
+    }
+
+    // length prefix of a table of entries of the given width in bytes
+    private static int getLength(ByteBuffer in, int width) {
+        int length = in.getInt();
+        if (length < 0 || (long) length * width > in.remaining())
+            throw new IllegalArgumentException("corrupt table length " + length);
+        return length;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        Random random = new Random(42);
+        WeightedCsrDigraph graph = PointToPointSearch.roadGrid(n, random);
+        long start = System.nanoTime();
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        System.out.printf("contracted %d vertices in %.0f ms, %d shortcuts, core of %d%n",
+                          graph.V(), (System.nanoTime() - start) / 1e6, hierarchy.shortcuts(), hierarchy.coreSize());
+
+        Path file = Files.createTempFile("hierarchy", ".ch");
+        hierarchy.save(file);
+        ContractionHierarchy opened = ContractionHierarchy.open(file, graph);
+        System.out.printf("saved %d bytes%n", Files.size(file));
+        Files.delete(file);
+
+        ShortestPathEngine engine = new ShortestPathEngine(graph);
+        PointToPointSearch bidirectional = new PointToPointSearch(graph);
+        ContractionHierarchy.Query query = opened.newQuery();
+        long bidirectionalSettled = 0, hierarchySettled = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            int s = random.nextInt(n * n);
+            int t = random.nextInt(n * n);
+            double expected = engine.fromSource(s).distTo(t);
+            if (Math.abs(query.distance(s, t) - expected) > 1e-9)
+                throw new IllegalStateException("distance mismatch for " + s + " -> " + t);
+            bidirectional.distance(s, t);
+            bidirectionalSettled += bidirectional.settled();
+            hierarchySettled += query.settled();
+        }
+        System.out.printf("settled per query: bidirectional %d, hierarchy %d%n",
+                          bidirectionalSettled / queries, hierarchySettled / queries);
+
+        ShortestPathWithSkippableEdge skip = new ShortestPathWithSkippableEdge(opened.trees(), 0, n * n - 1);
+        System.out.printf("skipping %s: %.2f%n", skip.getSkippedEdge(), skip.getpathDistance());
+    }
+}
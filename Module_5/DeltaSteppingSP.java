@@ -0,0 +1,422 @@
+import edu.princeton.cs.algs4.DijkstraSP;
+import edu.princeton.cs.algs4.DirectedEdge;
+import edu.princeton.cs.algs4.EdgeWeightedDigraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel single-source shortest paths by delta-stepping. Tentative
+ * distances are grouped in buckets of width delta; the lowest bucket is
+ * emptied by rounds that relax the light edges (weight <= delta) of all its
+ * vertices at once, on the common fork-join pool, until no vertex falls back
+ * into it, and then the heavy edges of every vertex it held are relaxed once.
+ * A small delta approaches Dijkstra, a large one Bellman-Ford.
+ *
+ * Distances live in an AtomicLongArray as the raw bits of the doubles, which
+ * for non-negative values order like the values themselves, so a relaxation is
+ * a lock-free compare-and-set loop that only ever lowers a distance. Every
+ * distance ends as the smallest sum along any path, added edge by edge from
+ * the root, which is also what DijkstraSP computes, so the two agree exactly.
+ * Parent edges are chosen after the search among the edges that are tight,
+ * dist[u] + weight == dist[v].
+ *
+ * Trees are views valid until the next search in the same direction. Not
+ * thread-safe: one search runs at a time, using the pool for its own work.
+ */
+public class DeltaSteppingSP implements ShortestPathBackend {
+    private static final long INFINITY = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    // a round with fewer edges to relax runs in the calling thread
+    private static final int PARALLEL_EDGES = 1 << 12;
+    // edges per parallel chunk of a round
+    private static final int CHUNK_EDGES = 1 << 10;
+
+    private final WeightedCsrDigraph graph;
+    private final double delta;
+    private final DeltaTree forward;
+    private final DeltaTree reverse;
+
+    /**
+     * @param delta bucket width, positive
+     * @throws IllegalArgumentException if an edge weight is negative
+     */
+    public DeltaSteppingSP(WeightedCsrDigraph graph, double delta) {
+        if (graph == null) throw new IllegalArgumentException("Argument is null");
+        if (!(delta > 0) || Double.isInfinite(delta)) throw new IllegalArgumentException("delta must be positive and finite");
+        if (graph.hasNegativeWeights()) throw new IllegalArgumentException("graph has negative edge weights");
+        this.graph = graph;
+        this.delta = delta;
+        forward = new DeltaTree(false);
+        reverse = new DeltaTree(true);
+    }
+
+    /**
+     * Uses the average edge weight as bucket width
+     */
+    public DeltaSteppingSP(WeightedCsrDigraph graph) {
+        this(graph, defaultDelta(graph));
+    }
+
+    /**
+     * Freezes g into CSR form; later changes to g are not seen
+     */
+    public DeltaSteppingSP(EdgeWeightedDigraph g, double delta) {
+        this(WeightedCsrDigraph.of(g), delta);
+    }
+
+    private static double defaultDelta(WeightedCsrDigraph graph) {
+        if (graph == null) throw new IllegalArgumentException("Argument is null");
+        double sum = 0.0;
+        for (DirectedEdge e : graph.edges()) sum += e.weight();
+        return sum > 0 ? sum / graph.E() : 1.0;
+    }
+
+    public double delta() {
+        return delta;
+    }
+
+    @Override
+    public WeightedCsrDigraph graph() {
+        return graph;
+    }
+
+    @Override
+    public ShortestPathTree fromSource(int source) {
+        graph.validateVertex(source);
+        forward.run(source);
+        return forward;
+    }
+
+    @Override
+    public ShortestPathTree toTarget(int target) {
+        graph.validateVertex(target);
+        reverse.run(target);
+        return reverse;
+    }
+
+    /**
+     * Search state over one direction of the graph. Each vertex's adjacency is
+     * copied with its light edges first, so rounds scan them without testing
+     * weights against delta
+     */
+    private final class DeltaTree implements ShortestPathTree {
+        private final boolean reverse;
+        private final int[] offsets;
+        private final int[] lightEnd;
+        private final int[] neighbors;
+        private final double[] weights;
+        private final AtomicLongArray dist;
+        // distance v had when its light edges were last relaxed
+        private final double[] expanded;
+        private final int[] parent;
+        // round in which v was queued, bucket in which v was expanded
+        private final int[] queued;
+        private final int[] expandedInBucket;
+        private int round;
+        private int bucket;
+        private int root = -1;
+
+        DeltaTree(boolean reverse) {
+            this.reverse = reverse;
+            int V = graph.V();
+            offsets = graph.offsets(reverse);
+            int[] graphNeighbors = graph.neighbors(reverse);
+            double[] graphWeights = graph.weights(reverse);
+            lightEnd = new int[V];
+            neighbors = new int[graphNeighbors.length];
+            weights = new double[graphWeights.length];
+            for (int v = 0; v < V; v++) {
+                int light = offsets[v];
+                int heavy = offsets[v + 1];
+                for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                    int q = graphWeights[p] <= delta ? light++ : --heavy;
+                    neighbors[q] = graphNeighbors[p];
+                    weights[q] = graphWeights[p];
+                }
+                lightEnd[v] = light;
+            }
+            dist = new AtomicLongArray(V);
+            expanded = new double[V];
+            parent = new int[V];
+            queued = new int[V];
+            expandedInBucket = new int[V];
+        }
+
+        void run(int source) {
+            root = source;
+            int V = graph.V();
+            IntStream.range(0, V).parallel().forEach(v -> {
+                dist.set(v, INFINITY);
+                expanded[v] = Double.POSITIVE_INFINITY;
+            });
+            if (round < 0 || bucket < 0) {
+                Arrays.fill(queued, 0);
+                Arrays.fill(expandedInBucket, 0);
+                round = 0;
+                bucket = 0;
+            }
+            dist.set(source, Double.doubleToRawLongBits(0.0));
+            TreeMap<Long, IntList> buckets = new TreeMap<>();
+            IntList start = new IntList();
+            start.add(source);
+            buckets.put(0L, start);
+            while (!buckets.isEmpty()) {
+                Map.Entry<Long, IntList> lowest = buckets.pollFirstEntry();
+                long index = lowest.getKey();
+                bucket++;
+                IntList frontier = pending(lowest.getValue());
+                IntList settled = new IntList();
+                while (frontier.size > 0) {
+                    for (int i = 0; i < frontier.size; i++) {
+                        int v = frontier.items[i];
+                        if (expandedInBucket[v] != bucket) {
+                            expandedInBucket[v] = bucket;
+                            settled.add(v);
+                        }
+                    }
+                    IntList improved = relax(frontier, true);
+                    IntList next = new IntList();
+                    for (int i = 0; i < improved.size; i++) {
+                        int w = improved.items[i];
+                        long b = bucketOf(w);
+                        if (b <= index) next.add(w);
+                        else buckets.computeIfAbsent(b, k -> new IntList()).add(w);
+                    }
+                    frontier = pending(next);
+                }
+                IntList improved = relax(settled, false);
+                for (int i = 0; i < improved.size; i++) {
+                    int w = improved.items[i];
+                    // rounding may leave a heavy relaxation in this bucket; the next one expands it
+                    buckets.computeIfAbsent(Math.max(bucketOf(w), index + 1), k -> new IntList()).add(w);
+                }
+            }
+            chooseParents();
+        }
+
+        private long bucketOf(int v) {
+            return (long) (distance(v) / delta);
+        }
+
+        private double distance(int v) {
+            return Double.longBitsToDouble(dist.get(v));
+        }
+
+        // the listed vertices, once each, whose distance dropped since their last expansion
+        private IntList pending(IntList candidates) {
+            round++;
+            IntList pending = new IntList();
+            for (int i = 0; i < candidates.size; i++) {
+                int v = candidates.items[i];
+                if (queued[v] != round && distance(v) < expanded[v]) {
+                    queued[v] = round;
+                    pending.add(v);
+                }
+            }
+            return pending;
+        }
+
+        /**
+         * Relaxes the light or heavy edges of the vertices, in parallel chunks
+         * of about CHUNK_EDGES edges when there are enough
+         * @return the vertices whose distance was lowered, possibly repeated
+         */
+        private IntList relax(IntList vertices, boolean light) {
+            int count = vertices.size;
+            long edges = 0;
+            for (int i = 0; i < count; i++) {
+                int v = vertices.items[i];
+                edges += light ? lightEnd[v] - offsets[v] : offsets[v + 1] - lightEnd[v];
+            }
+            if (edges < PARALLEL_EDGES) {
+                IntList improved = new IntList();
+                relax(vertices, 0, count, light, improved);
+                return improved;
+            }
+            // split by vertex count, so a chunk of low degree vertices is not too small
+            int chunks = (int) Math.min(count, (edges + CHUNK_EDGES - 1) / CHUNK_EDGES);
+            IntList[] improved = new IntList[chunks];
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                improved[c] = new IntList();
+                relax(vertices, (int) ((long) count * c / chunks), (int) ((long) count * (c + 1) / chunks),
+                      light, improved[c]);
+            });
+            IntList all = new IntList();
+            for (IntList list : improved) all.addAll(list);
+            return all;
+        }
+
+        private void relax(IntList vertices, int from, int to, boolean light, IntList improved) {
+            for (int i = from; i < to; i++) {
+                int v = vertices.items[i];
+                double d = distance(v);
+                if (light) expanded[v] = d;
+                int first = light ? offsets[v] : lightEnd[v];
+                int last = light ? lightEnd[v] : offsets[v + 1];
+                for (int p = first; p < last; p++) {
+                    int w = neighbors[p];
+                    long candidate = Double.doubleToRawLongBits(d + weights[p]);
+                    long current = dist.get(w);
+                    while (candidate < current) {
+                        if (dist.compareAndSet(w, current, candidate)) {
+                            improved.add(w);
+                            break;
+                        }
+                        current = dist.get(w);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Gives every reached vertex a tight edge from a strictly closer
+         * vertex, in parallel; the few with only tight edges from equally
+         * distant ones, through zero or absorbed weights, are then reached by a
+         * search over those edges from the vertices already attached
+         */
+        private void chooseParents() {
+            int V = graph.V();
+            int[] inOffsets = graph.offsets(!reverse);
+            int[] inNeighbors = graph.neighbors(!reverse);
+            double[] inWeights = graph.weights(!reverse);
+            int[] inEdgeIds = graph.edgeIds(!reverse);
+            int[] tied = IntStream.range(0, V).parallel().filter(v -> {
+                parent[v] = -1;
+                if (v == root || dist.get(v) == INFINITY) return false;
+                double d = distance(v);
+                for (int p = inOffsets[v]; p < inOffsets[v + 1]; p++) {
+                    double du = distance(inNeighbors[p]);
+                    if (du < d && du + inWeights[p] == d) {
+                        parent[v] = inEdgeIds[p];
+                        return false;
+                    }
+                }
+                return true;
+            }).toArray();
+            if (tied.length == 0) return;
+            int[] outOffsets = graph.offsets(reverse);
+            int[] outNeighbors = graph.neighbors(reverse);
+            double[] outWeights = graph.weights(reverse);
+            int[] outEdgeIds = graph.edgeIds(reverse);
+            IntList attached = new IntList();
+            for (int v : tied) {
+                double d = distance(v);
+                for (int p = inOffsets[v]; p < inOffsets[v + 1]; p++) {
+                    int u = inNeighbors[p];
+                    if ((u == root || parent[u] != -1) && distance(u) + inWeights[p] == d) {
+                        parent[v] = inEdgeIds[p];
+                        attached.add(v);
+                        break;
+                    }
+                }
+            }
+            for (int i = 0; i < attached.size; i++) {
+                int u = attached.items[i];
+                double du = distance(u);
+                for (int p = outOffsets[u]; p < outOffsets[u + 1]; p++) {
+                    int w = outNeighbors[p];
+                    if (w != root && parent[w] == -1 && du + outWeights[p] == distance(w)) {
+                        parent[w] = outEdgeIds[p];
+                        attached.add(w);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int root() {
+            return root;
+        }
+
+        @Override
+        public boolean isReverse() {
+            return reverse;
+        }
+
+        @Override
+        public boolean hasPathTo(int v) {
+            graph.validateVertex(v);
+            return root != -1 && dist.get(v) != INFINITY;
+        }
+
+        @Override
+        public double distTo(int v) {
+            graph.validateVertex(v);
+            return root == -1 ? Double.POSITIVE_INFINITY : distance(v);
+        }
+
+        @Override
+        public int parentEdge(int v) {
+            graph.validateVertex(v);
+            return root == -1 ? -1 : parent[v];
+        }
+
+        @Override
+        public Iterable<DirectedEdge> pathTo(int v) {
+            if (!hasPathTo(v)) return null;
+            DirectedEdge[] edges = graph.edges();
+            List<DirectedEdge> path = new ArrayList<>();
+            for (int id = parent[v]; id != -1; ) {
+                DirectedEdge e = edges[id];
+                path.add(e);
+                id = parent[reverse ? e.to() : e.from()];
+            }
+            if (!reverse) Collections.reverse(path);
+            return path;
+        }
+    }
+
+    /**
+     * Growable list of ints
+     */
+    private static final class IntList {
+        private int[] items = new int[16];
+        private int size;
+
+        void add(int item) {
+            if (size == items.length) items = Arrays.copyOf(items, 2 * size);
+            items[size++] = item;
+        }
+
+        void addAll(IntList other) {
+            if (size + other.size > items.length) items = Arrays.copyOf(items, Math.max(2 * items.length, size + other.size));
+            System.arraycopy(other.items, 0, items, size, other.size);
+            size += other.size;
+        }
+    }
+
+    public static void main(String[] args) {
+        int V = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int E = args.length > 1 ? Integer.parseInt(args[1]) : 8 * V;
+        Random random = new Random(42);
+        EdgeWeightedDigraph g = new EdgeWeightedDigraph(V);
+        for (int i = 0; i < E; i++) {
+            g.addEdge(new DirectedEdge(random.nextInt(V), random.nextInt(V), random.nextDouble()));
+        }
+        long start = System.nanoTime();
+        DijkstraSP dijkstra = new DijkstraSP(g, 0);
+        long dijkstraNanos = System.nanoTime() - start;
+
+        DeltaSteppingSP deltaStepping = new DeltaSteppingSP(WeightedCsrDigraph.of(g));
+        deltaStepping.fromSource(0);
+        start = System.nanoTime();
+        ShortestPathTree tree = deltaStepping.fromSource(0);
+        long deltaNanos = System.nanoTime() - start;
+        for (int v = 0; v < V; v++) {
+            if (tree.distTo(v) != dijkstra.distTo(v))
+                throw new IllegalStateException("distance mismatch at " + v);
+        }
+        System.out.printf("%d vertices, %d edges, delta %.3f: DijkstraSP %.0f ms, delta-stepping %.0f ms, "
+                          + "identical distances%n", V, E, deltaStepping.delta(), dijkstraNanos / 1e6, deltaNanos / 1e6);
+
+        SecondShortestPath second = new SecondShortestPath(deltaStepping, 0, V - 1);
+        System.out.printf("second shortest 0 -> %d: %.4f%n", V - 1, second.getPathDist());
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed min-priority queue of the ints 0 .. capacity - 1 keyed by doubles,
+ * kept as a d-ary heap in primitive arrays. A wider node than the binary heap
+ * of algs4 IndexMinPQ makes the tree shallower, so the decrease-key calls that
+ * dominate Dijkstra sift up fewer levels, and no key is ever boxed.
+ */
+public final class IndexedDaryMinHeap {
+    private final int arity;
+    private final int[] heap;
+    private final double[] keys;
+    // position of each item in heap, -1 if absent
+    private final int[] position;
+    private int size;
+
+    /**
+     * @param capacity items are 0 .. capacity - 1
+     * @param arity children per node, at least 2
+     */
+    public IndexedDaryMinHeap(int capacity, int arity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity must be non-negative");
+        if (arity < 2) throw new IllegalArgumentException("arity must be at least 2");
+        this.arity = arity;
+        heap = new int[capacity];
+        keys = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int item) {
+        return position[item] != -1;
+    }
+
+    public void insert(int item, double key) {
+        if (position[item] != -1) throw new IllegalArgumentException("item " + item + " is already in the heap");
+        keys[item] = key;
+        heap[size] = item;
+        position[item] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * @param key new key of item, no larger than its current one
+     */
+    public void decreaseKey(int item, double key) {
+        if (position[item] == -1) throw new NoSuchElementException("item " + item + " is not in the heap");
+        keys[item] = key;
+        siftUp(position[item]);
+    }
+
+    public double minKey() {
+        if (size == 0) throw new NoSuchElementException("heap is empty");
+        return keys[heap[0]];
+    }
+
+    /**
+     * @return the item with the smallest key, removed from the heap
+     */
+    public int deleteMin() {
+        if (size == 0) throw new NoSuchElementException("heap is empty");
+        int min = heap[0];
+        position[min] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Empties the heap in time proportional to its size
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) position[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        while (i > 0) {
+            int parent = (i - 1) / arity;
+            int parentItem = heap[parent];
+            if (keys[parentItem] <= key) break;
+            heap[i] = parentItem;
+            position[parentItem] = i;
+            i = parent;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+
+    private void siftDown(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        while (true) {
+            int first = arity * i + 1;
+            if (first >= size) break;
+            int last = Math.min(first + arity, size);
+            int smallest = first;
+            double smallestKey = keys[heap[first]];
+            for (int c = first + 1; c < last; c++) {
+                double childKey = keys[heap[c]];
+                if (childKey < smallestKey) {
+                    smallest = c;
+                    smallestKey = childKey;
+                }
+            }
+            if (smallestKey >= key) break;
+            heap[i] = heap[smallest];
+            position[heap[i]] = i;
+            i = smallest;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+}
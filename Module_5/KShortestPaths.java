@@ -0,0 +1,547 @@
+import edu.princeton.cs.algs4.DirectedEdge;
+import edu.princeton.cs.algs4.EdgeWeightedDigraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.stream.IntStream;
+
+/**
+ * The k shortest paths from a source to a target, streamed lazily in
+ * increasing weight: each path is computed only when the iterator asks for
+ * it, so callers that stop early pay only for what they read.
+ *
+ * Both modes start from the shortest path tree towards the target, computed
+ * once by the backend as in SecondShortestPath.
+ * - loopless: Yen's algorithm. Every path found spawns one spur search per
+ *   vertex on it; these A* searches, guided by the exact distances to the
+ *   target, run in parallel on the common fork-join pool, each in a pooled
+ *   workspace with epoch-stamped arrays.
+ * - walks: Eppstein's algorithm, where paths may repeat vertices. A path is
+ *   the tree path plus a sequence of sidetrack edges, each costing its detour
+ *   from the tree; persistent heaps of sidetracks, built lazily per vertex,
+ *   give every next path in logarithmic time.
+ */
+public class KShortestPaths implements Iterable<KShortestPaths.Path> {
+    private static final int HEAP_ARITY = 4;
+    // paths with at least this many spur vertices search them in parallel
+    private static final int PARALLEL_SPURS = 8;
+
+    private final WeightedCsrDigraph graph;
+    private final DirectedEdge[] edges;
+    private final int source;
+    private final int target;
+    private final boolean loopless;
+    // distance from every vertex to target and the first edge of that path
+    private final double[] distToTarget;
+    private final int[] treeEdge;
+    // idle spur search workspaces
+    private final ConcurrentLinkedDeque<SpurSearch> workspaces = new ConcurrentLinkedDeque<>();
+
+    /**
+     * A path from source to target
+     */
+    public static final class Path {
+        private final DirectedEdge[] graphEdges;
+        private final int[] edgeIds;
+        private final double weight;
+
+        private Path(DirectedEdge[] graphEdges, int[] edgeIds) {
+            this.graphEdges = graphEdges;
+            this.edgeIds = edgeIds;
+            double total = 0.0;
+            for (int id : edgeIds) total += graphEdges[id].weight();
+            this.weight = total;
+        }
+
+        public double weight() {
+            return weight;
+        }
+
+        /**
+         * @return number of edges
+         */
+        public int length() {
+            return edgeIds.length;
+        }
+
+        public List<DirectedEdge> edges() {
+            List<DirectedEdge> path = new ArrayList<>(edgeIds.length);
+            for (int id : edgeIds) path.add(graphEdges[id]);
+            return Collections.unmodifiableList(path);
+        }
+
+        // vertex at position i, 0 <= i <= length()
+        private int vertex(int i) {
+            return i == edgeIds.length ? graphEdges[edgeIds[i - 1]].to() : graphEdges[edgeIds[i]].from();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Path && Arrays.equals(edgeIds, ((Path) other).edgeIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(edgeIds);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%.2f ", weight));
+            for (int id : edgeIds) s.append(graphEdges[id]).append("  ");
+            return s.toString();
+        }
+    }
+
+    private KShortestPaths(ShortestPathBackend backend, int source, int target, boolean loopless) {
+        if (backend == null) throw new IllegalArgumentException("Argument is null");
+        this.graph = backend.graph();
+        graph.validateVertex(source);
+        graph.validateVertex(target);
+        this.edges = graph.edges();
+        this.source = source;
+        this.target = target;
+        this.loopless = loopless;
+        ShortestPathTree toTarget = backend.toTarget(target);
+        distToTarget = new double[graph.V()];
+        treeEdge = new int[graph.V()];
+        for (int v = 0; v < graph.V(); v++) {
+            distToTarget[v] = toTarget.distTo(v);
+            treeEdge[v] = toTarget.parentEdge(v);
+        }
+    }
+
+    /**
+     * Simple paths, without repeated vertices, by Yen's algorithm
+     * @throws IllegalArgumentException if an edge weight is negative
+     */
+    public static KShortestPaths loopless(ShortestPathBackend backend, int source, int target) {
+        return new KShortestPaths(backend, source, target, true);
+    }
+
+    public static KShortestPaths loopless(EdgeWeightedDigraph g, int source, int target) {
+        return loopless(new ShortestPathEngine(g), source, target);
+    }
+
+    /**
+     * Paths that may repeat vertices and edges, by Eppstein's algorithm; there
+     * are infinitely many if a cycle can reach target
+     * @throws IllegalArgumentException if an edge weight is negative
+     */
+    public static KShortestPaths walks(ShortestPathBackend backend, int source, int target) {
+        return new KShortestPaths(backend, source, target, false);
+    }
+
+    public static KShortestPaths walks(EdgeWeightedDigraph g, int source, int target) {
+        return walks(new ShortestPathEngine(g), source, target);
+    }
+
+    /**
+     * @return a new lazy iterator over the paths in increasing weight
+     */
+    @Override
+    public Iterator<Path> iterator() {
+        return loopless ? new YenIterator() : new EppsteinIterator();
+    }
+
+    /**
+     * @return the up to k shortest paths in increasing weight
+     */
+    public List<Path> first(int k) {
+        if (k < 0) throw new IllegalArgumentException("k must be non-negative");
+        List<Path> paths = new ArrayList<>(Math.min(k, 64));
+        Iterator<Path> iterator = iterator();
+        while (paths.size() < k && iterator.hasNext()) paths.add(iterator.next());
+        return paths;
+    }
+
+    // edge ids of the tree path from v to target, appended to path from index at
+    private int appendTreePath(int v, int[] path, int at) {
+        for (int id = treeEdge[v]; id != -1; id = treeEdge[edges[id].to()]) {
+            path[at++] = id;
+        }
+        return at;
+    }
+
+    private int treePathLength(int v) {
+        int length = 0;
+        for (int id = treeEdge[v]; id != -1; id = treeEdge[edges[id].to()]) length++;
+        return length;
+    }
+
+    private Path treePath(int v) {
+        int[] ids = new int[treePathLength(v)];
+        appendTreePath(v, ids, 0);
+        return new Path(edges, ids);
+    }
+
+    /**
+     * Yen's algorithm: the next path is the best candidate formed by a prefix
+     * of an accepted path and a spur path that leaves it by an edge no
+     * accepted path with the same prefix takes
+     */
+    private final class YenIterator implements Iterator<Path> {
+        private final List<Path> accepted = new ArrayList<>();
+        private final PriorityQueue<Path> candidates = new PriorityQueue<>(
+                (a, b) -> a.weight != b.weight ? Double.compare(a.weight, b.weight)
+                                               : Integer.compare(a.length(), b.length()));
+        private final Set<Path> seen = new HashSet<>();
+        private Path next;
+        private boolean done;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) advance();
+            return next != null;
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Path path = next;
+            next = null;
+            return path;
+        }
+
+        private void advance() {
+            if (accepted.isEmpty()) {
+                if (distToTarget[source] == Double.POSITIVE_INFINITY) {
+                    done = true;
+                    return;
+                }
+                next = treePath(source);
+            }
+            else {
+                addSpurCandidates(accepted.get(accepted.size() - 1));
+                next = candidates.poll();
+                if (next == null) {
+                    done = true;
+                    return;
+                }
+            }
+            accepted.add(next);
+            seen.add(next);
+        }
+
+        private void addSpurCandidates(Path last) {
+            int spurs = last.length();
+            Path[] found = new Path[spurs];
+            IntStream positions = IntStream.range(0, spurs);
+            if (spurs >= PARALLEL_SPURS) positions = positions.parallel();
+            positions.forEach(i -> found[i] = spurPath(last, i));
+            for (Path candidate : found) {
+                if (candidate != null && seen.add(candidate)) candidates.add(candidate);
+            }
+        }
+
+        // the best path that follows last up to its vertex i and then leaves it
+        private Path spurPath(Path last, int i) {
+            SpurSearch search = workspaces.pollFirst();
+            if (search == null) search = new SpurSearch(graph.V());
+            try {
+                search.newQuery();
+                for (int j = 0; j < i; j++) search.banVertex(last.vertex(j));
+                for (Path path : accepted) {
+                    if (path.length() > i && samePrefix(path, last, i)) search.banEdge(path.edgeIds[i]);
+                }
+                int[] spur = search.run(last.vertex(i));
+                if (spur == null) return null;
+                int[] ids = Arrays.copyOf(last.edgeIds, i + spur.length);
+                System.arraycopy(spur, 0, ids, i, spur.length);
+                return new Path(edges, ids);
+            } finally {
+                workspaces.offerFirst(search);
+            }
+        }
+    }
+
+    private static boolean samePrefix(Path a, Path b, int length) {
+        for (int j = 0; j < length; j++) {
+            if (a.edgeIds[j] != b.edgeIds[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A* search from a spur vertex to target around banned vertices and edges,
+     * keyed by distance so far plus the unrestricted distance to target, which
+     * never overestimates and is consistent, so target is final once popped.
+     * All stamps are epochs, so a new query clears nothing
+     */
+    private final class SpurSearch {
+        private final double[] dist;
+        private final int[] parent;
+        private final int[] reached;
+        private final int[] settled;
+        private final int[] bannedVertex;
+        private final int[] bannedEdge;
+        private final IndexedDaryMinHeap heap;
+        private int epoch;
+
+        SpurSearch(int vertices) {
+            dist = new double[vertices];
+            parent = new int[vertices];
+            reached = new int[vertices];
+            settled = new int[vertices];
+            bannedVertex = new int[vertices];
+            bannedEdge = new int[graph.E()];
+            heap = new IndexedDaryMinHeap(vertices, HEAP_ARITY);
+        }
+
+        void newQuery() {
+            if (++epoch == 0) {
+                Arrays.fill(reached, 0);
+                Arrays.fill(settled, 0);
+                Arrays.fill(bannedVertex, 0);
+                Arrays.fill(bannedEdge, 0);
+                epoch = 1;
+            }
+            heap.clear();
+        }
+
+        void banVertex(int v) {
+            bannedVertex[v] = epoch;
+        }
+
+        void banEdge(int id) {
+            bannedEdge[id] = epoch;
+        }
+
+        /**
+         * @return edge ids of the shortest allowed path from spur to target, or
+         * null if there is none
+         */
+        int[] run(int spur) {
+            int[] offsets = graph.offsets(false);
+            int[] heads = graph.neighbors(false);
+            double[] weights = graph.weights(false);
+            int[] edgeIds = graph.edgeIds(false);
+            if (distToTarget[spur] == Double.POSITIVE_INFINITY) return null;
+            reached[spur] = epoch;
+            dist[spur] = 0.0;
+            parent[spur] = -1;
+            heap.insert(spur, distToTarget[spur]);
+            while (!heap.isEmpty()) {
+                int v = heap.deleteMin();
+                settled[v] = epoch;
+                if (v == target) return trace(spur);
+                for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                    int w = heads[p];
+                    if (settled[w] == epoch || bannedVertex[w] == epoch || bannedEdge[edgeIds[p]] == epoch) continue;
+                    if (distToTarget[w] == Double.POSITIVE_INFINITY) continue;
+                    double candidate = dist[v] + weights[p];
+                    if (reached[w] != epoch) {
+                        reached[w] = epoch;
+                        dist[w] = candidate;
+                        parent[w] = edgeIds[p];
+                        heap.insert(w, candidate + distToTarget[w]);
+                    }
+                    else if (candidate < dist[w]) {
+                        dist[w] = candidate;
+                        parent[w] = edgeIds[p];
+                        heap.decreaseKey(w, candidate + distToTarget[w]);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private int[] trace(int spur) {
+            int length = 0;
+            for (int v = target; v != spur; v = edges[parent[v]].from()) length++;
+            int[] ids = new int[length];
+            for (int v = target; v != spur; v = edges[parent[v]].from()) ids[--length] = parent[v];
+            return ids;
+        }
+    }
+
+    /**
+     * Persistent leftist heap of sidetrack edges keyed by their detour cost;
+     * melding copies only the right spine, so the heap of a vertex shares all
+     * but O(log E) nodes with the heap of the next vertex on its tree path
+     */
+    private static final class Sidetracks {
+        private final int edge;
+        private final double delta;
+        private final int rank;
+        private final Sidetracks left;
+        private final Sidetracks right;
+
+        Sidetracks(int edge, double delta, Sidetracks left, Sidetracks right) {
+            this.edge = edge;
+            this.delta = delta;
+            if (rank(left) < rank(right)) {
+                Sidetracks swap = left;
+                left = right;
+                right = swap;
+            }
+            this.left = left;
+            this.right = right;
+            this.rank = rank(right) + 1;
+        }
+
+        static int rank(Sidetracks heap) {
+            return heap == null ? 0 : heap.rank;
+        }
+
+        static Sidetracks meld(Sidetracks a, Sidetracks b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            if (b.delta < a.delta) {
+                Sidetracks swap = a;
+                a = b;
+                b = swap;
+            }
+            return new Sidetracks(a.edge, a.delta, a.left, meld(a.right, b));
+        }
+    }
+
+    /**
+     * Eppstein's algorithm. A path is the tree path from source with a sequence
+     * of sidetracks, each an edge off the tree from a vertex on the current
+     * tree path, adding weight + dist(head) - dist(tail) >= 0. A candidate is
+     * its last sidetrack's node in the heap of the vertex it leaves from; the
+     * next candidates replace that sidetrack by one of its two heap children,
+     * or append the best sidetrack from its head
+     */
+    private final class EppsteinIterator implements Iterator<Path> {
+        // heap of all sidetracks on the tree path from v, built on first use
+        private final Sidetracks[] pathHeap = new Sidetracks[graph.V()];
+        private final boolean[] built = new boolean[graph.V()];
+        private final PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        private boolean started;
+        private long sequence;
+
+        private final class Candidate implements Comparable<Candidate> {
+            private final Candidate previous;
+            private final Sidetracks node;
+            private final double cost;
+            private final long order = sequence++;
+
+            Candidate(Candidate previous, Sidetracks node, double cost) {
+                this.previous = previous;
+                this.node = node;
+                this.cost = cost;
+            }
+
+            @Override
+            public int compareTo(Candidate other) {
+                return cost != other.cost ? Double.compare(cost, other.cost) : Long.compare(order, other.order);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !started ? distToTarget[source] != Double.POSITIVE_INFINITY : !candidates.isEmpty();
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (!started) {
+                started = true;
+                offer(null, heapOf(source), distToTarget[source]);
+                return treePath(source);
+            }
+            Candidate best = candidates.poll();
+            Sidetracks node = best.node;
+            double base = best.cost - node.delta;
+            offer(best.previous, node.left, base);
+            offer(best.previous, node.right, base);
+            offer(best, heapOf(edges[node.edge].to()), best.cost);
+            return walk(best);
+        }
+
+        private void offer(Candidate previous, Sidetracks node, double base) {
+            if (node != null) candidates.add(new Candidate(previous, node, base + node.delta));
+        }
+
+        private Path walk(Candidate last) {
+            int count = 0;
+            for (Candidate c = last; c != null; c = c.previous) count++;
+            int[] sidetracks = new int[count];
+            for (Candidate c = last; c != null; c = c.previous) sidetracks[--count] = c.node.edge;
+            int[] ids = new int[16];
+            int length = 0;
+            int v = source;
+            for (int sidetrack : sidetracks) {
+                int tail = edges[sidetrack].from();
+                for (; v != tail; v = edges[treeEdge[v]].to()) {
+                    if (length == ids.length) ids = Arrays.copyOf(ids, 2 * length);
+                    ids[length++] = treeEdge[v];
+                }
+                if (length == ids.length) ids = Arrays.copyOf(ids, 2 * length);
+                ids[length++] = sidetrack;
+                v = edges[sidetrack].to();
+            }
+            int rest = treePathLength(v);
+            ids = Arrays.copyOf(ids, length + rest);
+            appendTreePath(v, ids, length);
+            return new Path(edges, ids);
+        }
+
+        // melds the sidetracks of v into the heap of the next vertex on its tree
+        // path, walking up to the first vertex already built instead of recursing
+        private Sidetracks heapOf(int v) {
+            if (built[v]) return pathHeap[v];
+            int[] chain = new int[16];
+            int size = 0;
+            for (int u = v; !built[u]; ) {
+                if (size == chain.length) chain = Arrays.copyOf(chain, 2 * size);
+                chain[size++] = u;
+                if (treeEdge[u] == -1) break;
+                u = edges[treeEdge[u]].to();
+            }
+            int[] offsets = graph.offsets(false);
+            int[] heads = graph.neighbors(false);
+            double[] weights = graph.weights(false);
+            int[] edgeIds = graph.edgeIds(false);
+            for (int i = size - 1; i >= 0; i--) {
+                int u = chain[i];
+                Sidetracks heap = treeEdge[u] == -1 ? null : pathHeap[edges[treeEdge[u]].to()];
+                for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                    int w = heads[p];
+                    if (edgeIds[p] == treeEdge[u] || distToTarget[w] == Double.POSITIVE_INFINITY) continue;
+                    double delta = Math.max(0.0, weights[p] + distToTarget[w] - distToTarget[u]);
+                    heap = Sidetracks.meld(heap, new Sidetracks(edgeIds[p], delta, null, null));
+                }
+                pathHeap[u] = heap;
+                built[u] = true;
+            }
+            return pathHeap[v];
+        }
+    }
+
+    public static void main(String[] args) {
+        EdgeWeightedDigraph g = new EdgeWeightedDigraph(6);
+        g.addEdge(new DirectedEdge(0, 1, 3));
+        g.addEdge(new DirectedEdge(0, 2, 2));
+        g.addEdge(new DirectedEdge(1, 3, 4));
+        g.addEdge(new DirectedEdge(2, 1, 1));
+        g.addEdge(new DirectedEdge(2, 3, 2));
+        g.addEdge(new DirectedEdge(2, 4, 3));
+        g.addEdge(new DirectedEdge(3, 4, 2));
+        g.addEdge(new DirectedEdge(3, 5, 1));
+        g.addEdge(new DirectedEdge(4, 5, 2));
+        g.addEdge(new DirectedEdge(5, 2, 1));
+
+        ShortestPathEngine engine = new ShortestPathEngine(g);
+        System.out.println("loopless:");
+        for (Path path : KShortestPaths.loopless(engine, 0, 5).first(5)) {
+            System.out.println(path);
+        }
+        System.out.println("walks:");
+        for (Path path : KShortestPaths.walks(engine, 0, 5).first(5)) {
+            System.out.println(path);
+        }
+    }
+}
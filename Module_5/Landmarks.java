@@ -0,0 +1,107 @@
+import edu.princeton.cs.algs4.EdgeWeightedDigraph;
+
+/**
+ * Exact distances to and from a few landmark vertices, for the ALT lower
+ * bounds of A* search: by the triangle inequality, for every landmark L
+ * d(v, t) >= d(v, L) - d(t, L) and d(v, t) >= d(L, t) - d(L, v).
+ * Landmarks are picked farthest first, each one as far as possible from those
+ * already chosen, so that they sit on the edge of the graph, behind most
+ * targets as seen from most sources. Immutable, so one instance can serve
+ * every search over the same graph.
+ */
+public final class Landmarks {
+    private final WeightedCsrDigraph graph;
+    private final int[] vertices;
+    // fromLandmark[i][v] = d(landmark i, v), toLandmark[i][v] = d(v, landmark i)
+    private final double[][] fromLandmark;
+    private final double[][] toLandmark;
+
+    private Landmarks(WeightedCsrDigraph graph, int[] vertices, double[][] fromLandmark, double[][] toLandmark) {
+        this.graph = graph;
+        this.vertices = vertices;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    /**
+     * Picks count landmarks, running two full Dijkstra searches per landmark
+     * @throws IllegalArgumentException if an edge weight is negative
+     */
+    public static Landmarks select(WeightedCsrDigraph graph, int count) {
+        if (graph == null) throw new IllegalArgumentException("Argument is null");
+        if (count < 1 || count > graph.V())
+            throw new IllegalArgumentException("count must be between 1 and " + graph.V());
+        ShortestPathEngine engine = new ShortestPathEngine(graph);
+        int V = graph.V();
+        int[] vertices = new int[count];
+        double[][] from = new double[count][];
+        double[][] to = new double[count][];
+        // separation[v]: smallest round trip from v to a chosen landmark
+        double[] separation = new double[V];
+        ShortestPathTree start = engine.fromSource(0);
+        int next = farthest(start, V);
+        for (int i = 0; i < count; i++) {
+            vertices[i] = next;
+            ShortestPathTree forward = engine.fromSource(next);
+            ShortestPathTree reverse = engine.toTarget(next);
+            from[i] = new double[V];
+            to[i] = new double[V];
+            int best = -1;
+            for (int v = 0; v < V; v++) {
+                from[i][v] = forward.distTo(v);
+                to[i][v] = reverse.distTo(v);
+                double roundTrip = from[i][v] + to[i][v];
+                separation[v] = i == 0 ? roundTrip : Math.min(separation[v], roundTrip);
+                if (best == -1 || separation[v] > separation[best]) best = v;
+            }
+            next = best;
+        }
+        return new Landmarks(graph, vertices, from, to);
+    }
+
+    public static Landmarks select(EdgeWeightedDigraph g, int count) {
+        return select(WeightedCsrDigraph.of(g), count);
+    }
+
+    private static int farthest(ShortestPathTree tree, int V) {
+        int best = tree.root();
+        for (int v = 0; v < V; v++) {
+            if (tree.hasPathTo(v) && tree.distTo(v) > tree.distTo(best)) best = v;
+        }
+        return best;
+    }
+
+    public int count() {
+        return vertices.length;
+    }
+
+    /**
+     * @return the i-th landmark
+     */
+    public int vertex(int i) {
+        if (i < 0 || i >= vertices.length)
+            throw new IllegalArgumentException("landmark " + i + " is not between 0 and " + (vertices.length - 1));
+        return vertices[i];
+    }
+
+    WeightedCsrDigraph graph() {
+        return graph;
+    }
+
+    /**
+     * @return a lower bound on d(v, w), 0 where no landmark gives one
+     */
+    double lowerBound(int v, int w) {
+        double bound = 0.0;
+        for (int i = 0; i < vertices.length; i++) {
+            double[] to = toLandmark[i];
+            double[] from = fromLandmark[i];
+            // infinities would make these undefined, and such a landmark says nothing useful
+            if (to[v] != Double.POSITIVE_INFINITY && to[w] != Double.POSITIVE_INFINITY)
+                bound = Math.max(bound, to[v] - to[w]);
+            if (from[w] != Double.POSITIVE_INFINITY && from[v] != Double.POSITIVE_INFINITY)
+                bound = Math.max(bound, from[w] - from[v]);
+        }
+        return bound;
+    }
+}
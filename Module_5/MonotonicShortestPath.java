@@ -3,53 +3,52 @@ import edu.princeton.cs.algs4.EdgeWeightedDigraph;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 
 public class MonotonicShortestPath {
     // to store monotonic  dist from s to vertex i
-    private Double[] distTo;
-    // to store last edge to vertex i in monotonic shortest path from s
-    private DirectedEdge[] edgeTo;
+    private final double[] distTo;
+    // to store id of last edge to vertex i in monotonic shortest path from s, -1 if none
+    private final int[] edgeTo;
+    private final DirectedEdge[] edges;
 
     public MonotonicShortestPath(EdgeWeightedDigraph g, int source) {
-        distTo = new Double[g.V()];
-        edgeTo = new DirectedEdge[g.V()];
+        this(new ShortestPathEngine(g), source);
+    }
 
-        // arrays to store monotonic inc and monotonic dec distance
-        Double[] incDistTo = new Double[g.V()];
-        Double[] decDistTo = new Double[g.V()];
-        Arrays.fill(incDistTo, Double.POSITIVE_INFINITY);
+    /**
+     * Answers the query with a shared engine: its graph keeps the edges sorted
+     * by weight once, and its scratch arrays hold the decreasing pass
+     */
+    public MonotonicShortestPath(ShortestPathEngine engine, int source) {
+        WeightedCsrDigraph g = engine.graph();
+        g.validateVertex(source);
+        edges = g.edges();
+        int V = g.V();
+
+        // monotonic inc distances and incoming edges go straight into the
+        // result, monotonic dec ones into the engine's scratch arrays
+        distTo = new double[V];
+        edgeTo = new int[V];
+        double[] decDistTo = engine.scratchDistances();
+        int[] decEdgeTo = engine.scratchEdges();
+        Arrays.fill(distTo, Double.POSITIVE_INFINITY);
         Arrays.fill(decDistTo, Double.POSITIVE_INFINITY);
-        incDistTo[source] = 0.0;
+        Arrays.fill(edgeTo, -1);
+        Arrays.fill(decEdgeTo, -1);
+        distTo[source] = 0.0;
         decDistTo[source] = 0.0;
 
-        // arrays to store incoming edge to vertex in a monotonic inc & dec
-        // Shortest path
-        DirectedEdge[] incEdgeTo = new DirectedEdge[g.V()];
-        DirectedEdge[] decEdgeTo = new DirectedEdge[g.V()];
-        Arrays.fill(incEdgeTo, null);
-        Arrays.fill(decEdgeTo, null);
-
-        ArrayList<DirectedEdge> ascSortedEdges = new ArrayList<>(g.E());
-        for (DirectedEdge e : g.edges()) {
-            ascSortedEdges.add(e);
-        }
-
-        ascSortedEdges.sort(Comparator.comparingDouble(DirectedEdge::weight));
-        for (DirectedEdge e : ascSortedEdges) {
-            relaxEdge(e, incDistTo, incEdgeTo, true);
+        int[] ascSortedEdges = g.edgesByWeight();
+        for (int id : ascSortedEdges) {
+            relaxEdge(id, distTo, edgeTo, true);
         }
 
-        for (DirectedEdge e : ascSortedEdges.reversed()) {
-            relaxEdge(e, decDistTo, decEdgeTo, false);
+        for (int i = ascSortedEdges.length - 1; i >= 0; i--) {
+            relaxEdge(ascSortedEdges[i], decDistTo, decEdgeTo, false);
         }
 
-        for (int i = 0; i < g.V(); i++) {
-            if (incDistTo[i] < decDistTo[i]) {
-                distTo[i] = incDistTo[i];
-                edgeTo[i] = incEdgeTo[i];
-            }
-            else {
+        for (int i = 0; i < V; i++) {
+            if (!(distTo[i] < decDistTo[i])) {
                 distTo[i] = decDistTo[i];
                 edgeTo[i] = decEdgeTo[i];
             }
@@ -61,36 +60,38 @@ public class MonotonicShortestPath {
     }
 
     public Iterable<DirectedEdge> getPath(int vertex) {
-        ArrayList<DirectedEdge> edges = new ArrayList<>();
-        while (edgeTo[vertex] != null) {
-            edges.add(edgeTo[vertex]);
-            vertex = edgeTo[vertex].from();
+        ArrayList<DirectedEdge> path = new ArrayList<>();
+        while (edgeTo[vertex] != -1) {
+            DirectedEdge e = edges[edgeTo[vertex]];
+            path.add(e);
+            vertex = e.from();
         }
-        return edges.reversed();
+        return path.reversed();
     }
 
-    private void relaxEdge(DirectedEdge e, Double[] distToArray, DirectedEdge[] edgeToArray,
-                           boolean inc) {
+    private void relaxEdge(int id, double[] distToArray, int[] edgeToArray, boolean inc) {
+        DirectedEdge e = edges[id];
         int v = e.from();
         int w = e.to();
 
         // if previous edge exists then check for monotonic condition
-        if (edgeToArray[v] != null) {
+        if (edgeToArray[v] != -1) {
+            double previous = edges[edgeToArray[v]].weight();
             if (inc) {
                 // if prev edge has weight greater than current  edge
                 // then monotonic condition doesn't hold in strictly increasing
                 // path
-                if (edgeToArray[v].weight() >= e.weight()) return;
+                if (previous >= e.weight()) return;
             }
             else {
-                if (edgeToArray[v].weight() <= e.weight()) return;
+                if (previous <= e.weight()) return;
             }
         }
 
         // relaxing the edge
         if (distToArray[v] + e.weight() < distToArray[w]) {
             distToArray[w] = distToArray[v] + e.weight();
-            edgeToArray[w] = e;
+            edgeToArray[w] = id;
         }
     }
 
@@ -0,0 +1,262 @@
+import edu.princeton.cs.algs4.DirectedEdge;
+import edu.princeton.cs.algs4.EdgeWeightedDigraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shortest path between one source and one target by bidirectional Dijkstra:
+ * a forward search from the source and a reverse one from the target, over
+ * the incoming edges, take turns until no path through an unsettled vertex
+ * can beat the best meeting found so far, so only the vertices around the two
+ * ends are settled instead of everything closer to the source than the target.
+ *
+ * With landmarks the searches become bidirectional A*, each key raised by the
+ * average potential p(v) = (bound(v, t) - bound(s, v)) / 2 of the landmark
+ * lower bounds; the forward search uses p and the reverse one -p, which keeps
+ * both consistent, and the stopping test stays minForward + minReverse >= best.
+ *
+ * Arrays are reused across queries as in ShortestPathEngine. Not thread-safe:
+ * use one search per thread over a shared graph and landmarks.
+ */
+public class PointToPointSearch {
+    private static final int HEAP_ARITY = 4;
+
+    private final WeightedCsrDigraph graph;
+    private final Landmarks landmarks;
+    private final Side forward;
+    private final Side reverse;
+    // forward potential of each vertex, valid if potentialStamp[v] == epoch
+    private final double[] potential;
+    private final int[] potentialStamp;
+    private int epoch;
+    private int source = -1;
+    private int target = -1;
+    private double best;
+    private int meeting;
+    private int settled;
+
+    public PointToPointSearch(WeightedCsrDigraph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * @param landmarks for A* bounds, selected on the same graph; null for
+     * plain bidirectional Dijkstra
+     */
+    public PointToPointSearch(WeightedCsrDigraph graph, Landmarks landmarks) {
+        if (graph == null) throw new IllegalArgumentException("Argument is null");
+        if (landmarks != null && landmarks.graph() != graph)
+            throw new IllegalArgumentException("landmarks were selected on another graph");
+        if (graph.hasNegativeWeights()) throw new IllegalArgumentException("graph has negative edge weights");
+        this.graph = graph;
+        this.landmarks = landmarks;
+        forward = new Side(false);
+        reverse = new Side(true);
+        potential = new double[graph.V()];
+        potentialStamp = new int[graph.V()];
+    }
+
+    /**
+     * Freezes g into CSR form; later changes to g are not seen
+     */
+    public PointToPointSearch(EdgeWeightedDigraph g) {
+        this(WeightedCsrDigraph.of(g));
+    }
+
+    /**
+     * @return length of the shortest path from source to target, positive
+     * infinity if there is none
+     */
+    public double distance(int source, int target) {
+        run(source, target);
+        return best;
+    }
+
+    /**
+     * @return the edges of the shortest path from source to target in travel
+     * order, null if there is none
+     */
+    public Iterable<DirectedEdge> path(int source, int target) {
+        run(source, target);
+        if (meeting == -1) return null;
+        DirectedEdge[] edges = graph.edges();
+        List<DirectedEdge> path = new ArrayList<>();
+        for (int id = forward.parent[meeting]; id != -1; id = forward.parent[edges[id].from()]) {
+            path.add(edges[id]);
+        }
+        Collections.reverse(path);
+        for (int id = reverse.parent[meeting]; id != -1; id = reverse.parent[edges[id].to()]) {
+            path.add(edges[id]);
+        }
+        return path;
+    }
+
+    /**
+     * @return vertices settled by both searches of the last query, the work a
+     * full Dijkstra search counts in reached vertices
+     */
+    public int settled() {
+        return settled;
+    }
+
+    private void run(int s, int t) {
+        graph.validateVertex(s);
+        graph.validateVertex(t);
+        if (++epoch == 0) {
+            Arrays.fill(potentialStamp, 0);
+            forward.resetStamps();
+            reverse.resetStamps();
+            epoch = 1;
+        }
+        source = s;
+        target = t;
+        best = Double.POSITIVE_INFINITY;
+        meeting = -1;
+        settled = 0;
+        forward.start(s);
+        reverse.start(t);
+        if (s == t) {
+            best = 0.0;
+            meeting = s;
+            return;
+        }
+        while (!forward.heap.isEmpty() && !reverse.heap.isEmpty()) {
+            if (forward.heap.minKey() + reverse.heap.minKey() >= best) break;
+            if (forward.heap.minKey() <= reverse.heap.minKey()) forward.settleNext(reverse);
+            else reverse.settleNext(forward);
+        }
+    }
+
+    // forward potential of v; the reverse search uses its negation
+    private double potential(int v) {
+        if (landmarks == null) return 0.0;
+        if (potentialStamp[v] != epoch) {
+            potentialStamp[v] = epoch;
+            potential[v] = (landmarks.lowerBound(v, target) - landmarks.lowerBound(source, v)) / 2;
+        }
+        return potential[v];
+    }
+
+    /**
+     * One direction of the search; dist and parent of v are valid if
+     * reached[v] == epoch, and v is final if settledStamp[v] == epoch
+     */
+    private final class Side {
+        private final boolean reverse;
+        private final double[] dist;
+        private final int[] parent;
+        private final int[] reached;
+        private final int[] settledStamp;
+        private final IndexedDaryMinHeap heap;
+
+        Side(boolean reverse) {
+            this.reverse = reverse;
+            int V = graph.V();
+            dist = new double[V];
+            parent = new int[V];
+            reached = new int[V];
+            settledStamp = new int[V];
+            heap = new IndexedDaryMinHeap(V, HEAP_ARITY);
+        }
+
+        void resetStamps() {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settledStamp, 0);
+        }
+
+        void start(int root) {
+            heap.clear();
+            reached[root] = epoch;
+            dist[root] = 0.0;
+            parent[root] = -1;
+            heap.insert(root, key(root, 0.0));
+        }
+
+        private double key(int v, double d) {
+            return reverse ? d - potential(v) : d + potential(v);
+        }
+
+        void settleNext(Side other) {
+            int v = heap.deleteMin();
+            settledStamp[v] = epoch;
+            settled++;
+            int[] offsets = graph.offsets(reverse);
+            int[] neighbors = graph.neighbors(reverse);
+            double[] weights = graph.weights(reverse);
+            int[] edgeIds = graph.edgeIds(reverse);
+            double d = dist[v];
+            for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                int w = neighbors[p];
+                if (settledStamp[w] == epoch) continue;
+                double candidate = d + weights[p];
+                if (reached[w] != epoch) {
+                    reached[w] = epoch;
+                    dist[w] = candidate;
+                    parent[w] = edgeIds[p];
+                    heap.insert(w, key(w, candidate));
+                }
+                else if (candidate < dist[w]) {
+                    dist[w] = candidate;
+                    parent[w] = edgeIds[p];
+                    heap.decreaseKey(w, key(w, candidate));
+                }
+                else continue;
+                if (other.reached[w] == epoch && candidate + other.dist[w] < best) {
+                    best = candidate + other.dist[w];
+                    meeting = w;
+                }
+            }
+        }
+    }
+
+    // road-like grid: n x n vertices, two-way streets of random length
+    static WeightedCsrDigraph roadGrid(int n, Random random) {
+        EdgeWeightedDigraph g = new EdgeWeightedDigraph(n * n);
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                int v = r * n + c;
+                if (c + 1 < n) {
+                    double w = 1 + random.nextDouble();
+                    g.addEdge(new DirectedEdge(v, v + 1, w));
+                    g.addEdge(new DirectedEdge(v + 1, v, w));
+                }
+                if (r + 1 < n) {
+                    double w = 1 + random.nextDouble();
+                    g.addEdge(new DirectedEdge(v, v + n, w));
+                    g.addEdge(new DirectedEdge(v + n, v, w));
+                }
+            }
+        }
+        return WeightedCsrDigraph.of(g);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        Random random = new Random(42);
+        WeightedCsrDigraph graph = roadGrid(n, random);
+        ShortestPathEngine engine = new ShortestPathEngine(graph);
+        PointToPointSearch bidirectional = new PointToPointSearch(graph);
+        PointToPointSearch alt = new PointToPointSearch(graph, Landmarks.select(graph, 8));
+        long dijkstraReached = 0, bidirectionalSettled = 0, altSettled = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            int s = random.nextInt(n * n);
+            int t = random.nextInt(n * n);
+            ShortestPathTree tree = engine.fromSource(s);
+            double expected = tree.distTo(t);
+            for (int v = 0; v < n * n; v++) {
+                if (tree.distTo(v) <= expected) dijkstraReached++;
+            }
+            if (Math.abs(bidirectional.distance(s, t) - expected) > 1e-9 || Math.abs(alt.distance(s, t) - expected) > 1e-9)
+                throw new IllegalStateException("distance mismatch for " + s + " -> " + t);
+            bidirectionalSettled += bidirectional.settled();
+            altSettled += alt.settled();
+        }
+        System.out.printf("settled per query: dijkstra %d, bidirectional %d, bidirectional ALT %d%n",
+                          dijkstraReached / queries, bidirectionalSettled / queries, altSettled / queries);
+    }
+}
@@ -1,7 +1,5 @@
-import edu.princeton.cs.algs4.DijkstraSP;
 import edu.princeton.cs.algs4.DirectedEdge;
 import edu.princeton.cs.algs4.EdgeWeightedDigraph;
-import edu.princeton.cs.algs4.Stack;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -12,14 +10,22 @@ public class SecondShortestPath {
     private List<DirectedEdge> secondShortestPath;
 
     public SecondShortestPath(EdgeWeightedDigraph g, int source, int destination) {
+        this(new ShortestPathEngine(g), source, destination);
+    }
+
+    /**
+     * Answers the query with a shared backend, so repeated queries on the same
+     * graph reuse its arrays instead of rebuilding the graph and its searches;
+     * a ContractionHierarchy backend replaces both Dijkstra runs by sweeps
+     */
+    public SecondShortestPath(ShortestPathBackend backend, int source, int destination) {
         // shortest path from s to all other vertices
-        DijkstraSP spFromS = new DijkstraSP(g, source);
+        ShortestPathTree spFromS = backend.fromSource(source);
 
         // shortest path from all other vertices to destination
-        EdgeWeightedDigraph reversedG = reverseGraph(g);
-        DijkstraSP spFromD = new DijkstraSP(reversedG, destination);
+        ShortestPathTree spFromD = backend.toTarget(destination);
 
-        int splitVertex = findPathVertex(g, spFromS, spFromD, destination);
+        int splitVertex = findPathVertex(backend.graph().V(), spFromS, spFromD, destination);
 
         if (splitVertex == -1) {
             secondShortestDist = Double.POSITIVE_INFINITY;
@@ -41,11 +47,11 @@ public class SecondShortestPath {
 
     // finds the path vertex such that path from source to path vertex and path
     // from path vertex to destination gives the second shortest path
-    private int findPathVertex(EdgeWeightedDigraph g, DijkstraSP spFromS,
-                               DijkstraSP spFromD, int destination) {
+    private int findPathVertex(int vertices, ShortestPathTree spFromS,
+                               ShortestPathTree spFromD, int destination) {
         double pathDist = Double.POSITIVE_INFINITY;
         int pathVertex = -1;
-        for (int v = 0; v < g.V(); v++) {
+        for (int v = 0; v < vertices; v++) {
             if (spFromS.hasPathTo(v) && spFromD.hasPathTo(v)) {
                 double dist = spFromS.distTo(v) + spFromD.distTo(v);
                 if (dist < pathDist && dist > spFromS.distTo(destination)) {
@@ -59,7 +65,8 @@ public class SecondShortestPath {
 
     // Builds the second-shortest path from source to split vertex and from
     // split vertex to destination
-    private List<DirectedEdge> buildPath(DijkstraSP spFromS, DijkstraSP spFromD, int splitVertex) {
+    private List<DirectedEdge> buildPath(ShortestPathTree spFromS, ShortestPathTree spFromD,
+                                         int splitVertex) {
         List<DirectedEdge> path = new ArrayList<>();
 
         // add edges from source to splitVertex
@@ -67,28 +74,15 @@ public class SecondShortestPath {
             path.add(e);
         }
 
-        // add edges from splitVertex  destination
-        Stack<DirectedEdge> stack = new Stack<>();
+        // add edges from splitVertex to destination; the reverse tree already
+        // lists the original edges in travel order
         for (DirectedEdge e : spFromD.pathTo(splitVertex)) {
-            // spFromD is run on reversed graph, so flip edges back
-            stack.push(new DirectedEdge(e.to(), e.from(), e.weight()));
-        }
-        while (!stack.isEmpty()) {
-            path.add(stack.pop());
+            path.add(e);
         }
 
         return path;
     }
 
-    // Reverses the graph by changing the direction of each edge
-    private EdgeWeightedDigraph reverseGraph(EdgeWeightedDigraph g) {
-        EdgeWeightedDigraph reversedGraph = new EdgeWeightedDigraph(g.V());
-        for (DirectedEdge e : g.edges()) {
-            reversedGraph.addEdge(new DirectedEdge(e.to(), e.from(), e.weight()));
-        }
-        return reversedGraph;
-    }
-
     public static void main(String[] args) {
         EdgeWeightedDigraph g = new EdgeWeightedDigraph(4);
         g.addEdge(new DirectedEdge(0, 1, 1));
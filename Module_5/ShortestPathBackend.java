@@ -0,0 +1,22 @@
+/**
+ * Builds full shortest path trees over a WeightedCsrDigraph. The Module_5
+ * queries that combine a tree from the source with a tree to the target take
+ * a backend, so the search behind them can be swapped: ShortestPathEngine runs
+ * Dijkstra, ContractionHierarchy sweeps a preprocessed hierarchy and
+ * DeltaSteppingSP relaxes edges in parallel.
+ */
+public interface ShortestPathBackend {
+    WeightedCsrDigraph graph();
+
+    /**
+     * Shortest paths from source to every vertex
+     * @return tree valid until the next fromSource call on this backend
+     */
+    ShortestPathTree fromSource(int source);
+
+    /**
+     * Shortest paths from every vertex to target
+     * @return tree valid until the next toTarget call on this backend
+     */
+    ShortestPathTree toTarget(int target);
+}
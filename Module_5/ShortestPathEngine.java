@@ -0,0 +1,189 @@
+import edu.princeton.cs.algs4.DirectedEdge;
+import edu.princeton.cs.algs4.EdgeWeightedDigraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dijkstra searches over a frozen WeightedCsrDigraph, reusing every array
+ * across queries: distances and parent edges are epoch-stamped, so a new
+ * search starts without clearing them, and the priority queue is a primitive
+ * 4-ary indexed heap. One forward and one reverse tree live side by side, so
+ * a source-to-target query can combine both without copying the graph.
+ *
+ * Not thread-safe: use one engine per thread over a shared graph.
+ */
+public class ShortestPathEngine implements ShortestPathBackend {
+    private static final int HEAP_ARITY = 4;
+
+    private final WeightedCsrDigraph graph;
+    private final IndexedDaryMinHeap heap;
+    private final DijkstraTree forward;
+    private final DijkstraTree reverse;
+    // scratch for callers that need V doubles and ints per query, see MonotonicShortestPath
+    private double[] scratchDistances;
+    private int[] scratchEdges;
+
+    public ShortestPathEngine(WeightedCsrDigraph graph) {
+        if (graph == null) throw new IllegalArgumentException("Argument is null");
+        this.graph = graph;
+        this.heap = new IndexedDaryMinHeap(graph.V(), HEAP_ARITY);
+        this.forward = new DijkstraTree(graph, false);
+        this.reverse = new DijkstraTree(graph, true);
+    }
+
+    /**
+     * Freezes g into CSR form; later changes to g are not seen
+     */
+    public ShortestPathEngine(EdgeWeightedDigraph g) {
+        this(WeightedCsrDigraph.of(g));
+    }
+
+    @Override
+    public WeightedCsrDigraph graph() {
+        return graph;
+    }
+
+    /**
+     * Shortest paths from source to every vertex
+     * @return tree valid until the next fromSource call on this engine
+     * @throws IllegalArgumentException if an edge weight is negative
+     */
+    @Override
+    public ShortestPathTree fromSource(int source) {
+        graph.validateVertex(source);
+        checkWeights();
+        forward.run(source, heap);
+        return forward;
+    }
+
+    /**
+     * Shortest paths from every vertex to target, over the incoming edges
+     * @return tree valid until the next toTarget call on this engine
+     * @throws IllegalArgumentException if an edge weight is negative
+     */
+    @Override
+    public ShortestPathTree toTarget(int target) {
+        graph.validateVertex(target);
+        checkWeights();
+        reverse.run(target, heap);
+        return reverse;
+    }
+
+    private void checkWeights() {
+        if (graph.hasNegativeWeights()) throw new IllegalArgumentException("graph has negative edge weights");
+    }
+
+    double[] scratchDistances() {
+        if (scratchDistances == null) scratchDistances = new double[graph.V()];
+        return scratchDistances;
+    }
+
+    int[] scratchEdges() {
+        if (scratchEdges == null) scratchEdges = new int[graph.V()];
+        return scratchEdges;
+    }
+
+    /**
+     * Dijkstra tree over one direction of the graph; vertex v is reached by the
+     * current search if stamp[v] == epoch, otherwise dist and parent are stale
+     */
+    private static final class DijkstraTree implements ShortestPathTree {
+        private final WeightedCsrDigraph graph;
+        private final boolean reverse;
+        private final double[] dist;
+        private final int[] parent;
+        private final int[] stamp;
+        private int epoch;
+        private int root = -1;
+
+        DijkstraTree(WeightedCsrDigraph graph, boolean reverse) {
+            this.graph = graph;
+            this.reverse = reverse;
+            dist = new double[graph.V()];
+            parent = new int[graph.V()];
+            stamp = new int[graph.V()];
+        }
+
+        void run(int source, IndexedDaryMinHeap heap) {
+            if (++epoch == 0) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+            root = source;
+            int[] offsets = graph.offsets(reverse);
+            int[] neighbors = graph.neighbors(reverse);
+            double[] weights = graph.weights(reverse);
+            int[] edgeIds = graph.edgeIds(reverse);
+            heap.clear();
+            stamp[source] = epoch;
+            dist[source] = 0.0;
+            parent[source] = -1;
+            heap.insert(source, 0.0);
+            while (!heap.isEmpty()) {
+                double d = heap.minKey();
+                int v = heap.deleteMin();
+                for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                    int w = neighbors[p];
+                    double candidate = d + weights[p];
+                    if (stamp[w] != epoch) {
+                        stamp[w] = epoch;
+                        dist[w] = candidate;
+                        parent[w] = edgeIds[p];
+                        heap.insert(w, candidate);
+                    }
+                    else if (candidate < dist[w]) {
+                        dist[w] = candidate;
+                        parent[w] = edgeIds[p];
+                        heap.decreaseKey(w, candidate);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int root() {
+            return root;
+        }
+
+        @Override
+        public boolean isReverse() {
+            return reverse;
+        }
+
+        @Override
+        public boolean hasPathTo(int v) {
+            graph.validateVertex(v);
+            return stamp[v] == epoch;
+        }
+
+        @Override
+        public double distTo(int v) {
+            graph.validateVertex(v);
+            return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public int parentEdge(int v) {
+            graph.validateVertex(v);
+            return stamp[v] == epoch ? parent[v] : -1;
+        }
+
+        @Override
+        public Iterable<DirectedEdge> pathTo(int v) {
+            if (!hasPathTo(v)) return null;
+            DirectedEdge[] edges = graph.edges();
+            List<DirectedEdge> path = new ArrayList<>();
+            for (int id = parent[v]; id != -1; ) {
+                DirectedEdge e = edges[id];
+                path.add(e);
+                int next = reverse ? e.to() : e.from();
+                id = parent[next];
+            }
+            if (!reverse) Collections.reverse(path);
+            return path;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import edu.princeton.cs.algs4.DirectedEdge;
+
+/**
+ * Result of a single-source shortest path search: from its root to every
+ * vertex, or for a reverse tree from every vertex to its root. Trees handed
+ * out by a ShortestPathEngine are views of its reusable arrays and stay valid
+ * until the engine runs its next search in the same direction.
+ */
+public interface ShortestPathTree {
+    /**
+     * @return the source of a forward tree, the target of a reverse one
+     */
+    int root();
+
+    /**
+     * @return whether distances are measured from every vertex to the root
+     */
+    boolean isReverse();
+
+    boolean hasPathTo(int v);
+
+    /**
+     * @return length of the shortest path between root and v, in the tree's
+     * direction; positive infinity if there is none
+     */
+    double distTo(int v);
+
+    /**
+     * @return id of the edge by which the tree reaches v (forward) or leaves v
+     * towards the root (reverse), -1 for the root and unreached vertices
+     */
+    int parentEdge(int v);
+
+    /**
+     * @return the edges of the path, in travel order: root to v for a forward
+     * tree, v to root for a reverse one
+     */
+    Iterable<DirectedEdge> pathTo(int v);
+}
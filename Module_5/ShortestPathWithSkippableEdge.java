@@ -1,7 +1,5 @@
-import edu.princeton.cs.algs4.DijkstraSP;
 import edu.princeton.cs.algs4.DirectedEdge;
 import edu.princeton.cs.algs4.EdgeWeightedDigraph;
-import edu.princeton.cs.algs4.Stack;
 
 import java.util.ArrayList;
 
@@ -11,13 +9,21 @@ public class ShortestPathWithSkippableEdge {
     private double pathDistance;
 
     public ShortestPathWithSkippableEdge(EdgeWeightedDigraph g, int source, int destination) {
+        this(new ShortestPathEngine(g), source, destination);
+    }
+
+    /**
+     * Answers the query with a shared backend, so repeated queries on the same
+     * graph reuse its arrays instead of rebuilding the graph and its searches;
+     * a ContractionHierarchy backend replaces both Dijkstra runs by sweeps
+     */
+    public ShortestPathWithSkippableEdge(ShortestPathBackend backend, int source, int destination) {
         path = new ArrayList<>();
         pathDistance = Double.POSITIVE_INFINITY;
         skippedEdge = null;
-        EdgeWeightedDigraph reversedGraph = reverseGraph(g);
-        DijkstraSP spSource = new DijkstraSP(g, source);
-        DijkstraSP spDestination = new DijkstraSP(reversedGraph, destination);
-        skippedEdge = findSkippableEdge(g, spSource, spDestination);
+        ShortestPathTree spSource = backend.fromSource(source);
+        ShortestPathTree spDestination = backend.toTarget(destination);
+        skippedEdge = findSkippableEdge(backend.graph(), spSource, spDestination);
         if (skippedEdge != null) {
             buildPath(spSource, spDestination);
             pathDistance = spSource.distTo(skippedEdge.from()) + spDestination.distTo(
@@ -37,26 +43,23 @@ public class ShortestPathWithSkippableEdge {
         return skippedEdge;
     }
 
-    private void buildPath(DijkstraSP spSource, DijkstraSP spDestination) {
+    private void buildPath(ShortestPathTree spSource, ShortestPathTree spDestination) {
         for (DirectedEdge e : spSource.pathTo(skippedEdge.from())) {
             path.add(e);
         }
-
-        Stack<DirectedEdge> stack = new Stack<>();
-        for (DirectedEdge e : spDestination.pathTo(skippedEdge.to())) {
-            stack.push(new DirectedEdge(e.to(), e.from(), e.weight()));
-        }
         path.add(skippedEdge);
-        while (!stack.isEmpty()) {
-            path.add(stack.pop());
+        // the reverse tree lists the original edges in travel order
+        for (DirectedEdge e : spDestination.pathTo(skippedEdge.to())) {
+            path.add(e);
         }
     }
 
-    private static DirectedEdge findSkippableEdge(EdgeWeightedDigraph g, DijkstraSP spSource,
-                                                  DijkstraSP spDestination) {
+    private static DirectedEdge findSkippableEdge(WeightedCsrDigraph g, ShortestPathTree spSource,
+                                                  ShortestPathTree spDestination) {
         DirectedEdge zeroEdge = null;
         double pathLenght = Double.POSITIVE_INFINITY;
-        for (DirectedEdge e : g.edges()) {
+        for (int id = 0; id < g.E(); id++) {
+            DirectedEdge e = g.edge(id);
             int from = e.from();
             int to = e.to();
             if (spSource.hasPathTo(from) && spDestination.hasPathTo(to)) {
@@ -69,14 +72,6 @@ public class ShortestPathWithSkippableEdge {
         return zeroEdge;
     }
 
-    private EdgeWeightedDigraph reverseGraph(EdgeWeightedDigraph g) {
-        EdgeWeightedDigraph reversedGraph = new EdgeWeightedDigraph(g.V());
-        for (DirectedEdge e : g.edges()) {
-            reversedGraph.addEdge(new DirectedEdge(e.to(), e.from(), e.weight()));
-        }
-        return reversedGraph;
-    }
-
     public static void main(String[] args) {
         EdgeWeightedDigraph g = new EdgeWeightedDigraph(4);
         g.addEdge(new DirectedEdge(0, 1, 1));
@@ -0,0 +1,164 @@
+import edu.princeton.cs.algs4.DirectedEdge;
+import edu.princeton.cs.algs4.EdgeWeightedDigraph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Immutable edge-weighted digraph in compressed sparse row form, with both
+ * outgoing and incoming adjacency, so searches towards a target need no
+ * reversed copy of the graph. Edge i is the i-th edge of the source graph's
+ * edges(); the original DirectedEdge objects are kept and returned by paths,
+ * so a path found on the reverse adjacency still lists edges as they are.
+ */
+public final class WeightedCsrDigraph {
+    private final int V;
+    private final DirectedEdge[] edges;
+    // outgoing edges of v are positions offsets[v] .. offsets[v + 1] - 1
+    private final int[] offsets;
+    private final int[] heads;
+    private final double[] weights;
+    private final int[] edgeIds;
+    // incoming edges of v are positions reverseOffsets[v] .. reverseOffsets[v + 1] - 1
+    private final int[] reverseOffsets;
+    private final int[] tails;
+    private final double[] reverseWeights;
+    private final int[] reverseEdgeIds;
+    private final boolean hasNegativeWeights;
+    // edge ids sorted by weight, stable, built on first use
+    private volatile int[] edgesByWeight;
+
+    private WeightedCsrDigraph(int V, DirectedEdge[] edges) {
+        this.V = V;
+        this.edges = edges;
+        int E = edges.length;
+        offsets = new int[V + 1];
+        reverseOffsets = new int[V + 1];
+        boolean negative = false;
+        for (DirectedEdge e : edges) {
+            offsets[e.from() + 1]++;
+            reverseOffsets[e.to() + 1]++;
+            if (e.weight() < 0) negative = true;
+        }
+        hasNegativeWeights = negative;
+        for (int v = 0; v < V; v++) {
+            offsets[v + 1] += offsets[v];
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        heads = new int[E];
+        weights = new double[E];
+        edgeIds = new int[E];
+        tails = new int[E];
+        reverseWeights = new double[E];
+        reverseEdgeIds = new int[E];
+        int[] next = Arrays.copyOf(offsets, V);
+        int[] reverseNext = Arrays.copyOf(reverseOffsets, V);
+        for (int id = 0; id < E; id++) {
+            DirectedEdge e = edges[id];
+            int position = next[e.from()]++;
+            heads[position] = e.to();
+            weights[position] = e.weight();
+            edgeIds[position] = id;
+            position = reverseNext[e.to()]++;
+            tails[position] = e.from();
+            reverseWeights[position] = e.weight();
+            reverseEdgeIds[position] = id;
+        }
+    }
+
+    /**
+     * Freezes g; later changes to g are not seen
+     */
+    public static WeightedCsrDigraph of(EdgeWeightedDigraph g) {
+        if (g == null) throw new IllegalArgumentException("Argument is null");
+        DirectedEdge[] edges = new DirectedEdge[g.E()];
+        int id = 0;
+        for (DirectedEdge e : g.edges()) {
+            edges[id++] = e;
+        }
+        return new WeightedCsrDigraph(g.V(), edges);
+    }
+
+    public int V() {
+        return V;
+    }
+
+    public int E() {
+        return edges.length;
+    }
+
+    /**
+     * @return the original edge with the given id
+     */
+    public DirectedEdge edge(int id) {
+        if (id < 0 || id >= edges.length)
+            throw new IllegalArgumentException("edge " + id + " is not between 0 and " + (edges.length - 1));
+        return edges[id];
+    }
+
+    public boolean hasNegativeWeights() {
+        return hasNegativeWeights;
+    }
+
+    /**
+     * @return ids of all edges by increasing weight, equal weights in id order;
+     * callers must not modify it
+     */
+    int[] edgesByWeight() {
+        int[] sorted = edgesByWeight;
+        if (sorted == null) {
+            Integer[] ids = new Integer[edges.length];
+            for (int i = 0; i < ids.length; i++) ids[i] = i;
+            Arrays.sort(ids, Comparator.comparingDouble(i -> edges[i].weight()));
+            sorted = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) sorted[i] = ids[i];
+            edgesByWeight = sorted;
+        }
+        return sorted;
+    }
+
+    // raw arrays for the search loops; callers must not modify them
+
+    DirectedEdge[] edges() {
+        return edges;
+    }
+
+    int[] offsets(boolean reverse) {
+        return reverse ? reverseOffsets : offsets;
+    }
+
+    /**
+     * @return the far endpoint of each adjacency position: heads for outgoing
+     * edges, tails for incoming ones
+     */
+    int[] neighbors(boolean reverse) {
+        return reverse ? tails : heads;
+    }
+
+    double[] weights(boolean reverse) {
+        return reverse ? reverseWeights : weights;
+    }
+
+    int[] edgeIds(boolean reverse) {
+        return reverse ? reverseEdgeIds : edgeIds;
+    }
+
+    void validateVertex(int v) {
+        if (v < 0 || v >= V)
+            throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (V - 1));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(V).append(" vertices, ").append(edges.length).append(" edges").append('\n');
+        for (int v = 0; v < V; v++) {
+            s.append(v).append(": ");
+            for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                s.append(edges[edgeIds[p]]).append("  ");
+            }
+            s.append('\n');
+        }
+        return s.toString();
+    }
+}